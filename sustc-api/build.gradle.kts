@@ -17,10 +17,22 @@ dependencies {
 
     implementation("org.furyio:fury-core:0.3.1")
 
+    // CopyManager for bulk import; the runner provides the driver at runtime
+    compileOnly("org.postgresql:postgresql")
+
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testRuntimeOnly("org.postgresql:postgresql")
+
     // You may add any utility library you want to use, such as guava.
     // ORM libraries are prohibited in this project.
 }
 
+tasks.test {
+    useJUnitPlatform()
+    // 数据库测试会用导入的测试数据覆盖整个库，只有指定了 SUSTC_TEST_URL（一个临时库）时才运行
+    System.getenv("SUSTC_TEST_URL")?.let { systemProperty("sustc.test.url", it) }
+}
+
 tasks.withType<BootRun> {
     enabled = false
 }
@@ -0,0 +1,37 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated (cursor) query.
+ * <p>
+ * Unlike {@link PageResult} it carries no total: the next page is requested with {@link #nextCursor},
+ * which encodes where this page ended, so fetching a deep page costs the same as fetching the first one.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> implements Serializable {
+
+    /**
+     * List of items contained in the current page, in sort order.
+     */
+    private List<T> items;
+
+    /**
+     * Maximum number of items per page.
+     */
+    private int size;
+
+    /**
+     * Opaque cursor to pass back for the next page, or {@code null} if this is the last page.
+     */
+    private String nextCursor;
+}
@@ -4,7 +4,11 @@ import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.RecipeRecord;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public interface DatabaseService {
 
@@ -29,6 +33,51 @@ public interface DatabaseService {
             List<RecipeRecord> recipeRecords
     );
 
+    /**
+     * Imports data read from the given iterators, e.g. records decoded lazily from a file, visiting every record
+     * once. The default implementation collects the records into lists and calls
+     * {@link #importData(List, List, List)}; implementations may load them without holding every record in memory.
+     *
+     * @param reviewRecords review records
+     * @param userRecords   user records
+     * @param recipeRecords recipe records
+     */
+    default void importData(
+            Iterator<ReviewRecord> reviewRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<RecipeRecord> recipeRecords
+    ) {
+        List<ReviewRecord> reviews = new ArrayList<>();
+        reviewRecords.forEachRemaining(reviews::add);
+        List<UserRecord> users = new ArrayList<>();
+        userRecords.forEachRemaining(users::add);
+        List<RecipeRecord> recipes = new ArrayList<>();
+        recipeRecords.forEachRemaining(recipes::add);
+        importData(reviews, users, recipes);
+    }
+
+    /**
+     * Like {@link #importData(Iterator, Iterator, Iterator)}, with a fingerprint identifying the input (e.g. file
+     * names, sizes and modification times), so that implementations able to resume a failed import can recognize a
+     * retry with the same input. The default implementation ignores the fingerprint.
+     */
+    default void importData(
+            Iterator<ReviewRecord> reviewRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<RecipeRecord> recipeRecords,
+            String inputFingerprint
+    ) {
+        importData(reviewRecords, userRecords, recipeRecords);
+    }
+
+    /**
+     * Rows written to each table by the import in progress, or by the last one, for progress reports.
+     * The default implementation reports nothing.
+     */
+    default Map<String, Long> getImportProgress() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Delete all tables in the database.
      * <p>
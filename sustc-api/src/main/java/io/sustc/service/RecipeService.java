@@ -5,6 +5,7 @@ import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import org.springframework.lang.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +36,33 @@ public interface RecipeService {
      */
     RecipeRecord getRecipeById(long recipeId);
 
+    /**
+     * Retrieves several recipes at once.
+     *
+     * <p>The element at index {@code i} of the result is what {@link #getRecipeById(long)} returns for
+     * {@code recipeIds[i]}, so it is {@code null} if that recipe does not exist. The default implementation
+     * calls {@link #getRecipeById(long)} once per id; implementations may load them together.
+     *
+     * @param recipeIds the IDs of the recipes to retrieve
+     * @return the corresponding {@link RecipeRecord}s, in the order of {@code recipeIds}
+     * @throws IllegalArgumentException if {@code recipeIds} is {@code null} or contains an ID {@code <= 0}
+     */
+    default List<RecipeRecord> getRecipesByIds(long[] recipeIds) {
+        if (recipeIds == null) {
+            throw new IllegalArgumentException("recipeIds cannot be null");
+        }
+        for (long recipeId : recipeIds) {
+            if (recipeId <= 0) {
+                throw new IllegalArgumentException("recipeId must be positive");
+            }
+        }
+        List<RecipeRecord> recipes = new ArrayList<>(recipeIds.length);
+        for (long recipeId : recipeIds) {
+            recipes.add(getRecipeById(recipeId));
+        }
+        return recipes;
+    }
+
 
     /**
      * Searches recipes based on multiple optional criteria, supporting pagination and sorting.
@@ -0,0 +1,203 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Cache of the credentials {@link UserServiceImpl#login} checks, keyed by author id, so that the re-authentication
+ * at the start of every mutating call does not cost a round trip to {@code users}.
+ * <p>
+ * Only a SHA-256 digest of the stored password and the deleted flag are kept, never the password itself. Entries
+ * expire {@code sustc.auth-cache.ttl-ms} after they were loaded, which bounds how long a change made outside this
+ * process can go unnoticed, and the least recently used entries are evicted beyond {@code sustc.auth-cache.max-entries}
+ * (either set to 0 disables the cache).
+ * <p>
+ * Like {@link RecipeCache}, every write to a user's password or deleted flag must call {@link #invalidate(long)}, or
+ * {@link #clear()} for bulk changes; inside a transaction the entry is dropped again after completion, and a load that
+ * overlaps an invalidation is not stored.
+ */
+@Component
+public class AuthCache {
+
+    private final long ttlNanos;
+
+    private final int maxEntries;
+
+    private final LinkedHashMap<Long, Credential> entries = new LinkedHashMap<>(1024, 0.75f, true);
+
+    // 每次失效递增；加载期间若发生过失效，加载结果不入缓存
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * What login needs to know about a user: the digest of the stored password and whether the account is deleted.
+     */
+    public static final class Credential {
+
+        private final byte[] digest;
+
+        private final boolean deleted;
+
+        private long loadedAt;
+
+        private Credential(byte[] digest, boolean deleted) {
+            this.digest = digest;
+            this.deleted = deleted;
+        }
+
+        public static Credential of(String storedPassword, boolean deleted) {
+            return new Credential(storedPassword == null ? null : digest(storedPassword), deleted);
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        /**
+         * Whether {@code password} equals the stored password; a user without a stored password matches nothing.
+         */
+        public boolean matches(String password) {
+            return digest != null && password != null && MessageDigest.isEqual(digest, digest(password));
+        }
+    }
+
+    public AuthCache(@Value("${sustc.auth-cache.ttl-ms:60000}") long ttlMillis,
+                     @Value("${sustc.auth-cache.max-entries:100000}") int maxEntries) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached credential of {@code authorId}, or loads it with {@code loader} and caches it.
+     * A {@code null} result (no such user) is returned but not cached, so a later registration is seen at once.
+     */
+    public Credential get(long authorId, LongFunction<Credential> loader) {
+        if (ttlNanos <= 0 || maxEntries <= 0) {
+            return loader.apply(authorId);
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            Credential cached = entries.get(authorId);
+            if (cached != null) {
+                if (now - cached.loadedAt < ttlNanos) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+                entries.remove(authorId);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        long stamp = invalidations.get();
+        Credential loaded = loader.apply(authorId);
+        if (loaded != null) {
+            put(authorId, loaded, now, stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the cached credential of one user, now and, inside a transaction, once more after it completes.
+     */
+    public void invalidate(long authorId) {
+        remove(authorId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(authorId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops every cached credential, e.g. after an import or a drop; like {@link #invalidate(long)} it repeats
+     * after the surrounding transaction completes.
+     */
+    public void clear() {
+        removeAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    removeAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * Counters since startup: {@code hits, misses, hitRate, roundTripsSaved, expirations, evictions, entries,
+     * maxEntries, ttlMillis}. Every hit is one {@code users} query that login did not have to run.
+     */
+    public Map<String, Object> getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("roundTripsSaved", h);
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMillis", ttlNanos / 1_000_000L);
+        return stats;
+    }
+
+    private synchronized void put(long authorId, Credential credential, long loadedAt, long stamp) {
+        if (invalidations.get() != stamp) {
+            return;
+        }
+        credential.loadedAt = loadedAt;
+        entries.put(authorId, credential);
+        // 访问顺序的 LinkedHashMap：迭代从最久未使用的条目开始
+        Iterator<Credential> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(long authorId) {
+        invalidations.incrementAndGet();
+        entries.remove(authorId);
+    }
+
+    private synchronized void removeAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    private static byte[] digest(String password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // 每个 JRE 都必须提供 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -6,22 +6,38 @@ import io.sustc.dto.RecipeRecord;
 import io.sustc.service.DatabaseService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.lang.NonNull;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * It's important to mark your implementation class with {@link Service} annotation.
@@ -50,271 +66,879 @@ public class DatabaseServiceImpl implements DatabaseService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private AuthCache authCache;
+
+    @Autowired
+    private FeedTimeline feedTimeline;
+
+    @Autowired
+    private FollowRatioBoard followRatioBoard;
+
+    /**
+     * Number of connections used to load independent tables at the same time.
+     * Set {@code sustc.import.parallelism=1} to load every table one after another.
+     */
+    @Value("${sustc.import.parallelism:2}")
+    private int importParallelism;
+
+    /**
+     * When enabled, tables are created without keys and constraints, bulk-loaded, and only then
+     * get their primary keys, CHECKs and foreign keys. When disabled, constraints exist before loading.
+     */
+    @Value("${sustc.import.defer-constraints:true}")
+    private boolean deferConstraints;
+
+    /**
+     * When enabled, staging tables are created {@code UNLOGGED} so the bulk load and index builds write no WAL,
+     * and are switched to {@code LOGGED} right before they are swapped into place. Unless the server runs with
+     * {@code wal_level=minimal}, {@code SET LOGGED} writes the whole table to WAL, so this pays off only when the
+     * load rewrites rows many times over.
+     */
+    @Value("${sustc.import.unlogged-staging:false}")
+    private boolean unloggedStaging;
+
+    // 导入时先写入的暂存表后缀，全部加载成功后再改名替换正式表
+    private static final String STAGING_SUFFIX = "_staging";
+
+    // 按外键依赖顺序排列（父表在前）
+    private static final String[] TABLES = {
+            "users", "recipes", "reviews", "recipe_ingredients", "review_likes", "user_follows"
+    };
+
+    /**
+     * Number of source records copied per transaction. After each batch the import journal records
+     * how far every table got, so a failed import resumes from the last committed batch.
+     */
+    @Value("${sustc.import.batch-size:10000}")
+    private int importBatchSize;
+
+    private static final String CONSTRAINTS_STEP = "constraints";
+
+    private static final String FOLLOW_COUNTS_STEP = "follow_counts";
+
+    private static final String INDEXES_STEP = "indexes";
+
+    private static final String SET_LOGGED_STEP = "set_logged";
+
+    // 当前（或最近一次）导入中每张表已写入的行数，供 db import 显示实时进度
+    private final Map<String, LongAdder> importProgress = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface CopyTask {
+        void run(Connection conn) throws SQLException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface LoadPlan {
+        void run(ExecutorService pool, ImportJournal journal, FollowCounts followCounts);
+    }
+
+    // 把一条源记录写成目标表的若干行；copy 为 null 时表示该记录已在之前的导入中提交，只需重建去重状态
+    @FunctionalInterface
+    private interface RowWriter<T> {
+        void write(PgCopyWriter copy, T record);
+    }
+
+    // 一个输入源对应的一张目标表
+    private static final class Target<T> {
+
+        final String table;
+
+        final String columns;
+
+        final RowWriter<T> writer;
+
+        Target(String table, String columns, RowWriter<T> writer) {
+            this.table = table;
+            this.columns = columns;
+            this.writer = writer;
+        }
+    }
+
+    /**
+     * Imports the given lists from scratch. Lists carry no identity that a retry could be matched by (a corrected
+     * record keeps its id), so a failed import drops its staging tables and journal; callers that want to resume
+     * pass a fingerprint of their input to {@link #importData(Iterator, Iterator, Iterator, String)}.
+     */
     @Override
-    @Transactional
     public void importData(
             List<ReviewRecord> reviewRecords,
             List<UserRecord> userRecords,
             List<RecipeRecord> recipeRecords) {
 
-        // ddl to create tables.
-        createTables();
-
-        // 定义批次大小 设定？
-        int BATCH_SIZE = 1000;
-
-        // 拆分列表为多个子列表，每个子列表大小为BATCH_SIZE
-        //用户表
-        for (int i = 0; i < userRecords.size(); i += BATCH_SIZE) {
-            int end = Math.min(i + BATCH_SIZE, userRecords.size());
-            List<UserRecord> batch = userRecords.subList(i, end);
-            // 执行当前批次的插入
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO users (AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
-                    new BatchPreparedStatementSetter() {
-                        @Override
-                        public void setValues(@NonNull PreparedStatement ps, @NonNull int index) throws SQLException {
-                            UserRecord user = batch.get(index);
-                            ps.setLong(1, user.getAuthorId());
-                            ps.setString(2, user.getAuthorName());
-                            ps.setString(3, user.getGender());
-                            ps.setInt(4, user.getAge());
-                            ps.setInt(5, user.getFollowers());
-                            ps.setInt(6, user.getFollowing());
-                            ps.setString(7, user.getPassword());
-                            ps.setBoolean(8, user.isDeleted());
-                        }
+        if (deferConstraints) {
+            importData(reviewRecords.iterator(), userRecords.iterator(), recipeRecords.iterator(), null);
+            return;
+        }
+        runImport(false, null, (pool, journal, followCounts) -> {
+            // 按外键依赖分阶段加载：同一阶段内的表互不依赖，分别使用独立的连接并行 COPY
+            runStage(pool,
+                    conn -> loadSource(conn, journal, userRecords.iterator(), userTarget()));
+            runStage(pool,
+                    conn -> loadSource(conn, journal, recipeRecords.iterator(), recipeTarget()),
+                    conn -> loadSource(conn, journal, userRecords.iterator(), followTarget(followCounts)));
+            runStage(pool,
+                    conn -> loadSource(conn, journal, recipeRecords.iterator(), ingredientTarget()),
+                    conn -> loadSource(conn, journal, reviewRecords.iterator(), reviewTarget()));
+            runStage(pool,
+                    conn -> loadSource(conn, journal, reviewRecords.iterator(), likeTarget()));
+        });
+    }
 
-                        @Override
-                        public int getBatchSize() {
-                            return batch.size();
-                        }
-                    }
-            );
+    /**
+     * Imports data read from the given iterators without a way to resume; see
+     * {@link #importData(Iterator, Iterator, Iterator, String)}.
+     */
+    @Override
+    public void importData(
+            Iterator<ReviewRecord> reviewRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<RecipeRecord> recipeRecords) {
+        importData(reviewRecords, userRecords, recipeRecords, null);
+    }
+
+    /**
+     * Imports data read from the given iterators, visiting every record exactly once.
+     * <p>
+     * Each source feeds both of its tables in the same pass (users and user_follows, recipes and
+     * recipe_ingredients, reviews and review_likes), so callers can hand in records that are read lazily
+     * from a file and no full record list is ever held in memory. Because a follow or a like may arrive
+     * before the row it references, this path always builds keys and constraints after loading,
+     * regardless of {@code sustc.import.defer-constraints}.
+     * <p>
+     * If an import with the same {@code inputFingerprint} failed earlier, its staging tables and journal are
+     * reused: records that were already committed are only replayed through the in-memory deduplication,
+     * and finished steps are skipped. A {@code null} fingerprint always starts from scratch.
+     * <p>
+     * The iterators are consumed from import threads; closing any underlying resources is up to the caller.
+     *
+     * @param inputFingerprint identifies the input (e.g. file names, sizes and modification times)
+     */
+    @Override
+    public void importData(
+            Iterator<ReviewRecord> reviewRecords,
+            Iterator<UserRecord> userRecords,
+            Iterator<RecipeRecord> recipeRecords,
+            String inputFingerprint) {
+
+        runImport(true, inputFingerprint, (pool, journal, followCounts) -> runStage(pool,
+                conn -> loadSource(conn, journal, userRecords, userTarget(), followTarget(followCounts)),
+                conn -> loadSource(conn, journal, recipeRecords, recipeTarget(), ingredientTarget()),
+                conn -> loadSource(conn, journal, reviewRecords, reviewTarget(), likeTarget())));
+    }
+
+    /**
+     * Rows written to each table by the running (or last) import, in load order.
+     */
+    @Override
+    public Map<String, Long> getImportProgress() {
+        Map<String, Long> progress = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            LongAdder rows = importProgress.get(table);
+            progress.put(table, rows == null ? 0 : rows.sum());
         }
+        return progress;
+    }
 
-        //重新遍历user表，完成following与follower关联表
-        List<Object[]> followArgs = new ArrayList<>();
-        Set<String> seenFollows = new HashSet<>();
-        for (UserRecord user : userRecords) {
-            long authorId = user.getAuthorId();
-            // 用户关注的其他用户 -> (FollowerId = authorId, FollowingId = id)
-            long[] followingUsers = user.getFollowingUsers();
-            if (followingUsers != null) {
-                for (long fid : followingUsers) {
-                    if (fid == authorId) continue; // skip self-follow
-                    String key = authorId + "-" + fid;
-                    // 去重
-                    if (seenFollows.add(key)) {
-                        followArgs.add(new Object[]{authorId, fid});
-                    }
-                }
+    // 导入的公共流程：建暂存表 -> 加载 -> 建约束 -> 刷新关注数 -> 建索引 -> 转为 LOGGED -> 替换正式表；每一步都记在导入日志里
+    private void runImport(boolean deferred, String fingerprint, LoadPlan load) {
+        long phaseStart = System.currentTimeMillis();
+        for (String table : TABLES) {
+            importProgress.put(table, new LongAdder());
+        }
+        ImportJournal journal = new ImportJournal(jdbcTemplate);
+        List<String> stagingTables = new ArrayList<>();
+        for (String table : TABLES) {
+            stagingTables.add(table + STAGING_SUFFIX);
+        }
+        if (journal.resume(fingerprint, stagingTables)) {
+            log.info("Resuming import from {}", ImportJournal.TABLE);
+        } else {
+            // 清理上一次导入可能遗留的暂存表，然后建表
+            dropTables(STAGING_SUFFIX);
+            List<String> steps = new ArrayList<>(Arrays.asList(TABLES));
+            steps.add(CONSTRAINTS_STEP);
+            steps.add(FOLLOW_COUNTS_STEP);
+            steps.add(INDEXES_STEP);
+            steps.add(SET_LOGGED_STEP);
+            // 暂存表为 UNLOGGED 时，数据库崩溃后它们会被清空，日志也必须一起清空，否则续传会跳过丢失的数据
+            journal.start(fingerprint, steps, unloggedStaging);
+            createTables(STAGING_SUFFIX, unloggedStaging);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, importParallelism));
+        try {
+            if (!deferred) {
+                journal.runStep(CONSTRAINTS_STEP, () -> addConstraints(pool, STAGING_SUFFIX));
             }
+            phaseStart = logPhase("create tables", phaseStart);
 
-            // 用户的粉丝 -> (FollowerId = fid, FollowingId = authorId)
-            long[] followerUsers = user.getFollowerUsers();
-            if (followerUsers != null) {
-                for (long fid : followerUsers) {
-                    if (fid == authorId) continue; // skip self-follow
-                    String key = fid + "-" + authorId;
-                    if (seenFollows.add(key)) {
-                        followArgs.add(new Object[]{fid, authorId});
-                    }
-                }
+            // 关注边去重时顺带统计每个用户的粉丝数/关注数；若 user_follows 在之前的导入中已完成，本次不会遍历关注边
+            FollowCounts followCounts = new FollowCounts();
+            boolean countsInMemory = !journal.isDone("user_follows");
+            load.run(pool, journal, followCounts);
+            phaseStart = logPhase("load data", phaseStart);
+
+            if (deferred) {
+                journal.runStep(CONSTRAINTS_STEP, () -> {
+                    // 上次导入可能在建约束途中失败，先清掉已建的部分
+                    dropConstraints(STAGING_SUFFIX);
+                    addConstraints(pool, STAGING_SUFFIX);
+                });
+                phaseStart = logPhase("build constraints", phaseStart);
             }
-            if (followArgs.size() >= BATCH_SIZE) {
-                // 批量插入 user_follows 表
-                jdbcTemplate.batchUpdate(
-                        "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)",
-                        followArgs
-                );
-                followArgs.clear();
+
+            journal.runStep(FOLLOW_COUNTS_STEP, () -> runStage(pool,
+                    conn -> applyFollowCounts(conn, countsInMemory ? followCounts : null)));
+            phaseStart = logPhase("apply follow counts", phaseStart);
+
+            // 二级索引在数据全部就位后一次性构建，比逐行维护快得多；随后收集统计信息，替换后的查询计划即可用上索引
+            journal.runStep(INDEXES_STEP, () -> buildIndexes(pool, STAGING_SUFFIX));
+            phaseStart = logPhase("build indexes", phaseStart);
+
+            // SET LOGGED 会重写整张表并写入 WAL，放在替换事务之外完成，替换时只需改名
+            journal.runStep(SET_LOGGED_STEP, () -> setLogged(pool, STAGING_SUFFIX));
+            phaseStart = logPhase("set logged", phaseStart);
+
+            // 所有暂存表加载完成后，在一个短事务里替换正式表，保证导入整体的原子性
+            swapInStagingTables();
+            recipeCache.clear();
+            authCache.clear();
+            // 旧表连同其序列已被删除，下次分配时按新表的最大 id 重建序列
+            idAllocator.reset();
+            feedTimeline.reset();
+            feedTimeline.rebuild();
+            followRatioBoard.clear();
+            // 排行榜依赖计数与关注边一致，导入后核对一遍
+            followRatioBoard.reconcile();
+            logPhase("swap tables", phaseStart);
+        } catch (RuntimeException e) {
+            if (fingerprint == null) {
+                dropTables(STAGING_SUFFIX);
+                journal.discard();
+            } else {
+                log.warn("Import failed, keeping staging tables and {}; run it again with the same input to resume",
+                        ImportJournal.TABLE);
             }
+            throw e;
+        } finally {
+            pool.shutdownNow();
         }
-        // 插入剩余的
-        if (!followArgs.isEmpty()) {
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)",
-                    followArgs
-            );
+    }
+
+    // 记录每个阶段耗时，并附带当前堆占用与累计 GC 次数/耗时，便于比较导入时的内存压力
+    private long logPhase(String phase, long phaseStart) {
+        long now = System.currentTimeMillis();
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+            gcTime += Math.max(gc.getCollectionTime(), 0);
         }
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        log.info("Import phase [{}] took {} ms (heap used {} MB, GC so far: {} collections, {} ms)",
+                phase, now - phaseStart, heapUsed >> 20, gcCount, gcTime);
+        return now;
+    }
 
-        // After importing follow relations, ensure users.Followers and users.Following reflect the actual relations
+    // 提交同一阶段的所有任务，并等待它们全部完成；任一任务失败则整个导入失败
+    private void runStage(ExecutorService pool, CopyTask... tasks) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (CopyTask task : tasks) {
+            futures.add(pool.submit(() -> {
+                try (Connection conn = dataSource.getConnection()) {
+                    task.run(conn);
+                }
+                return null;
+            }));
+        }
         try {
-            String updateCountsSql = """
-                UPDATE users u
-                SET Followers = COALESCE((SELECT COUNT(*) FROM user_follows uf WHERE uf.FollowingId = u.AuthorId), 0),
-                    Following = COALESCE((SELECT COUNT(*) FROM user_follows uf WHERE uf.FollowerId = u.AuthorId), 0)
-            """;
-            jdbcTemplate.update(updateCountsSql);
-        } catch (Exception e) {
-            log.warn("Failed to refresh user follow counts after import: {}", e.getMessage());
-        }
-
-        //食谱表
-        for (int i = 0; i < recipeRecords.size(); i += BATCH_SIZE) {
-            int end = Math.min(i + BATCH_SIZE, recipeRecords.size());
-            List<RecipeRecord> batch = recipeRecords.subList(i, end);
-            // 执行当前批次的插入：插入 recipes 表
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO recipes (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, DatePublished, Description, RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent, SaturatedFatContent, CholesterolContent, SodiumContent, CarbohydrateContent, FiberContent, SugarContent, ProteinContent, RecipeServings, RecipeYield) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                    new BatchPreparedStatementSetter() {
-                        @Override
-                        public void setValues(@NonNull PreparedStatement ps, @NonNull int index) throws SQLException {
-                            RecipeRecord recipe = batch.get(index);
-                            ps.setLong(1, recipe.getRecipeId());
-                            ps.setString(2, recipe.getName());
-                            ps.setLong(3, recipe.getAuthorId());
-                            //ps.setString(4, recipe.getAuthorName());
-                            ps.setString(4, recipe.getCookTime());
-                            ps.setString(5, recipe.getPrepTime());
-                            ps.setString(6, recipe.getTotalTime());
-                            // datePublished may be null
-                            if (recipe.getDatePublished() != null) {
-                                ps.setTimestamp(7, recipe.getDatePublished());
-                            } else {
-                                ps.setNull(7, java.sql.Types.TIMESTAMP);
-                            }
-                            ps.setString(8, recipe.getDescription());
-                            ps.setString(9, recipe.getRecipeCategory());
-                            ps.setFloat(10, recipe.getAggregatedRating());
-                            ps.setInt(11, recipe.getReviewCount());
-                            ps.setFloat(12, recipe.getCalories());
-                            ps.setFloat(13, recipe.getFatContent());
-                            ps.setFloat(14, recipe.getSaturatedFatContent());
-                            ps.setFloat(15, recipe.getCholesterolContent());
-                            ps.setFloat(16, recipe.getSodiumContent());
-                            ps.setFloat(17, recipe.getCarbohydrateContent());
-                            ps.setFloat(18, recipe.getFiberContent());
-                            ps.setFloat(19, recipe.getSugarContent());
-                            ps.setFloat(20, recipe.getProteinContent());
-                            ps.setInt(21, recipe.getRecipeServings());
-                            ps.setString(22, recipe.getRecipeYield());
-                        }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException("Import stage failed", e.getCause());
+        }
+    }
+
+    /**
+     * Sets users.Followers and users.Following from the imported follow relations in one joined UPDATE.
+     * <p>
+     * User rows are loaded with zero counts. The counts gathered while the edges were deduplicated are
+     * copied into a temporary table and joined in; only users with at least one relation are touched.
+     * When the edges were loaded by an earlier, resumed import, {@code counts} is {@code null}
+     * and the same UPDATE is fed by a grouped aggregate over user_follows instead.
+     */
+    private void applyFollowCounts(Connection conn, FollowCounts counts) throws SQLException, IOException {
+        String source;
+        conn.setAutoCommit(false);
+        try {
+            if (counts != null) {
+                execute(conn, "CREATE TEMPORARY TABLE follow_counts (AuthorId BIGINT, Followers INTEGER, Following INTEGER) ON COMMIT DROP");
+                try (PgCopyWriter copy = new PgCopyWriter(conn, "follow_counts", "AuthorId, Followers, Following")) {
+                    counts.forEach((authorId, followers, following) ->
+                            copy.field(authorId).field(followers).field(following).endRow());
+                    copy.finish();
+                }
+                execute(conn, "ANALYZE follow_counts");
+                source = "follow_counts";
+            } else {
+                source = """
+                        (SELECT AuthorId, SUM(Followers) AS Followers, SUM(Following) AS Following
+                         FROM (SELECT FollowingId AS AuthorId, 1 AS Followers, 0 AS Following FROM user_follows_staging
+                               UNION ALL
+                               SELECT FollowerId, 0, 1 FROM user_follows_staging) edges
+                         GROUP BY AuthorId)""";
+            }
+            execute(conn, "UPDATE users_staging u SET Followers = c.Followers, Following = c.Following FROM "
+                    + source + " c WHERE u.AuthorId = c.AuthorId");
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void buildIndexes(ExecutorService pool, String suffix) {
+        List<CopyTask> indexTasks = new ArrayList<>();
+        boolean trigram = new SchemaIndexes(jdbcTemplate).enableTrigram();
+        for (String sql : SchemaIndexes.createStatements(suffix, trigram)) {
+            indexTasks.add(conn -> execute(conn, sql));
+        }
+        runStage(pool, indexTasks.toArray(new CopyTask[0]));
+
+        List<CopyTask> analyzeTasks = new ArrayList<>();
+        for (String table : TABLES) {
+            analyzeTasks.add(conn -> execute(conn, "ANALYZE " + table + suffix));
+        }
+        runStage(pool, analyzeTasks.toArray(new CopyTask[0]));
+    }
+
+    /**
+     * Startup schema check: brings tables imported before {@code recipes.IngredientCount} existed up to the current
+     * schema. The column is added, backfilled from {@code recipe_ingredients} and given its check constraint in one
+     * transaction, then its index is created. Does nothing before the first import or when the column is present.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void migrateSchema() {
+        Boolean outdated = jdbcTemplate.queryForObject("""
+                SELECT to_regclass('recipes') IS NOT NULL AND to_regclass('recipe_ingredients') IS NOT NULL
+                   AND NOT EXISTS (SELECT 1 FROM information_schema.columns
+                                   WHERE table_schema = current_schema() AND table_name = 'recipes'
+                                     AND column_name = 'ingredientcount')
+                """, Boolean.class);
+        if (!Boolean.TRUE.equals(outdated)) {
+            return;
+        }
+        log.info("recipes has no IngredientCount column, adding and backfilling it");
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                execute(conn, "ALTER TABLE recipes ADD COLUMN IF NOT EXISTS IngredientCount INTEGER NOT NULL DEFAULT 0");
+                execute(conn, """
+                        UPDATE recipes r SET IngredientCount = c.Parts
+                        FROM (SELECT RecipeId, COUNT(*) AS Parts FROM recipe_ingredients GROUP BY RecipeId) c
+                        WHERE r.RecipeId = c.RecipeId""");
+                execute(conn, "ALTER TABLE recipes ADD CONSTRAINT recipes_ingredientcount_check CHECK (IngredientCount >= 0)");
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        ensureIndexes();
+    }
+
+    /**
+     * Creates any declared secondary index that is missing on the live tables; see {@link SchemaIndexes}.
+     *
+     * @return names of the indexes that were created
+     */
+    public List<String> ensureIndexes() {
+        return new SchemaIndexes(jdbcTemplate).ensure();
+    }
 
-                        @Override
-                        public int getBatchSize() {
-                            return batch.size();
+    /**
+     * Checks that every declared index exists and is valid, then with {@code EXPLAIN} that the selective service
+     * queries can all use an index; see {@link SchemaIndexes#verify()}.
+     *
+     * @return the missing or invalid indexes, then the names of the queries that fall back to a full scan
+     */
+    public List<String> verifyIndexes() {
+        return new SchemaIndexes(jdbcTemplate).verify();
+    }
+
+    // 删除旧的正式表，把暂存表及其约束、索引改名为正式名称，并删除导入日志；读者在提交前一直能看到旧数据
+    private void swapInStagingTables() {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (int i = TABLES.length - 1; i >= 0; i--) {
+                    stmt.execute("DROP TABLE IF EXISTS " + TABLES[i] + " CASCADE");
+                }
+                for (String table : TABLES) {
+                    String staging = table + STAGING_SUFFIX;
+                    List<String> constraints = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery(
+                            "SELECT conname FROM pg_constraint WHERE conrelid = '" + staging + "'::regclass")) {
+                        while (rs.next()) {
+                            constraints.add(rs.getString(1));
                         }
                     }
-            );
-
-            // 为当前批次收集所有配料并批量插入 recipe_ingredients 表
-            // 防止因重复配料导致主键(RecipeId, IngredientPart)冲突：
-            // 1) 在内存中去重同一批次中的(RecipeId, IngredientPart)
-            // 2) 使用 PostgreSQL 的 ON CONFLICT DO NOTHING 忽略已存在的记录（对并发也更安全）
-            List<Object[]> ingredientArgs = new ArrayList<>();
-            Set<String> seenIngredientPairs = new HashSet<>();
-            for (RecipeRecord recipe : batch) {
-                String[] parts = recipe.getRecipeIngredientParts();
-                if (parts == null) continue;
-                for (String part : parts) {
-                    if (part == null) continue;
-                    String normalized = part.trim();
-                    String key = recipe.getRecipeId() + "|" + normalized.toLowerCase();
-                    if (seenIngredientPairs.add(key)) {
-                        ingredientArgs.add(new Object[]{recipe.getRecipeId(), normalized});
+                    // 约束自带的索引随约束改名，其余（二级索引）单独改名
+                    List<String> indexes = new ArrayList<>();
+                    try (ResultSet rs = stmt.executeQuery(
+                            "SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid"
+                                    + " WHERE i.indrelid = '" + staging + "'::regclass"
+                                    + " AND NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conindid = i.indexrelid)")) {
+                        while (rs.next()) {
+                            indexes.add(rs.getString(1));
+                        }
+                    }
+                    stmt.execute("ALTER TABLE " + staging + " RENAME TO " + table);
+                    for (String name : indexes) {
+                        if (name.startsWith(staging)) {
+                            stmt.execute("ALTER INDEX " + name + " RENAME TO " + table + name.substring(staging.length()));
+                        }
+                    }
+                    for (String name : constraints) {
+                        if (name.startsWith(staging)) {
+                            stmt.execute("ALTER TABLE " + table + " RENAME CONSTRAINT " + name
+                                    + " TO " + table + name.substring(staging.length()));
+                        }
                     }
                 }
-                if (ingredientArgs.size() >= BATCH_SIZE) {
-                    // 批量插入 recipe_ingredients 表，遇到重复主键则忽略（Postgres）
-                    jdbcTemplate.batchUpdate(
-                            "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) VALUES (?, ?) ON CONFLICT DO NOTHING",
-                            ingredientArgs
-                    );
-                    ingredientArgs.clear();
+                stmt.execute("DROP TABLE IF EXISTS " + ImportJournal.TABLE);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void dropTables(String suffix) {
+        for (int i = TABLES.length - 1; i >= 0; i--) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLES[i] + suffix + " CASCADE");
+        }
+    }
+
+    /**
+     * Switches the tables with the given suffix to {@code LOGGED}. A logged table may not reference an unlogged one,
+     * so tables are switched level by level along the foreign keys, parents first, with each level in parallel.
+     * Tables that are already logged are left alone.
+     */
+    private void setLogged(ExecutorService pool, String suffix) {
+        Set<String> logged = new HashSet<>();
+        for (String table : TABLES) {
+            if (!isUnlogged(table + suffix)) {
+                logged.add(table);
+            }
+        }
+        while (logged.size() < TABLES.length) {
+            List<String> level = new ArrayList<>();
+            for (String table : TABLES) {
+                if (logged.contains(table)) continue;
+                boolean parentsLogged = true;
+                for (String[] fk : foreignKeys(table)) {
+                    parentsLogged &= fk[2].equals(table) || logged.contains(fk[2]);
+                }
+                if (parentsLogged) {
+                    level.add(table);
                 }
             }
-            // 插入剩余的
-            if (!ingredientArgs.isEmpty()) {
-                jdbcTemplate.batchUpdate(
-                        "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) VALUES (?, ?) ON CONFLICT DO NOTHING",
-                        ingredientArgs
-                );
+            List<CopyTask> tasks = new ArrayList<>();
+            for (String table : level) {
+                tasks.add(conn -> execute(conn, "ALTER TABLE " + table + suffix + " SET LOGGED"));
             }
+            runStage(pool, tasks.toArray(new CopyTask[0]));
+            logged.addAll(level);
+        }
+    }
+
+    private boolean isUnlogged(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT relpersistence = 'u' FROM pg_class WHERE oid = ?::regclass", Boolean.class, table));
+    }
+
+    // 删除给定后缀各表上的全部约束（外键随被引用的主键级联删除）
+    private void dropConstraints(String suffix) {
+        for (int i = TABLES.length - 1; i >= 0; i--) {
+            String table = TABLES[i] + suffix;
+            List<String> names = jdbcTemplate.queryForList(
+                    "SELECT conname FROM pg_constraint WHERE conrelid = ?::regclass", String.class, table);
+            for (String name : names) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " DROP CONSTRAINT IF EXISTS " + name + " CASCADE");
+            }
+        }
+    }
+
+    /**
+     * Copies one source into its target tables in a single pass, one connection per table.
+     * <p>
+     * Every {@link #importBatchSize} records each table's COPY is finished and committed together with its
+     * journal checkpoint. Records below a table's checkpoint (from an earlier, failed attempt) are passed to
+     * the writer with a {@code null} copy so that deduplication state is rebuilt without writing them again.
+     */
+    @SafeVarargs
+    private <T> void loadSource(Connection conn, ImportJournal journal, Iterator<T> records, Target<T>... targets)
+            throws SQLException {
+        int n = targets.length;
+        long[] resumeAt = new long[n];
+        boolean[] active = new boolean[n];
+        boolean anyActive = false;
+        for (int i = 0; i < n; i++) {
+            active[i] = !journal.isDone(targets[i].table);
+            resumeAt[i] = journal.committedRecords(targets[i].table);
+            anyActive |= active[i];
+        }
+        if (!anyActive) {
+            return;
         }
-        //评论表
-        for (int j = 0; j < reviewRecords.size(); j += BATCH_SIZE) {
-            int endJ = Math.min(j + BATCH_SIZE, reviewRecords.size());
-            List<ReviewRecord> reviewBatch = reviewRecords.subList(j, endJ);
-            // 执行当前批次的插入
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) VALUES (?, ?, ?, ?, ?, ?, ?)",
-                    new BatchPreparedStatementSetter() {
-                        @Override
-                        public void setValues(@NonNull PreparedStatement ps, @NonNull int index) throws SQLException {
-                            ReviewRecord review = reviewBatch.get(index);
-                            ps.setLong(1, review.getReviewId());
-                            ps.setLong(2, review.getRecipeId());
-                            ps.setLong(3, review.getAuthorId());
-                            ps.setFloat(4, review.getRating());
-                            ps.setString(5, review.getReview());
-                            // dateSubmitted may be null
-                            if (review.getDateSubmitted() != null) {
-                                ps.setTimestamp(6, review.getDateSubmitted());
-                            } else {
-                                ps.setNull(6, java.sql.Types.TIMESTAMP);
-                            }
-                            // dateModified may be null
-                            if (review.getDateModified() != null) {
-                                ps.setTimestamp(7, review.getDateModified());
-                            } else {
-                                ps.setNull(7, java.sql.Types.TIMESTAMP);
-                            }
-                        }
 
-                        @Override
-                        public int getBatchSize() {
-                            return reviewBatch.size();
+        Connection[] conns = new Connection[n];
+        PgCopyWriter[] copies = new PgCopyWriter[n];
+        long[] reported = new long[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                conns[i] = i == 0 ? conn : dataSource.getConnection();
+                conns[i].setAutoCommit(false);
+            }
+            long offset = 0;
+            while (records.hasNext()) {
+                T record = records.next();
+                for (int i = 0; i < n; i++) {
+                    if (!active[i]) continue;
+                    if (offset < resumeAt[i]) {
+                        targets[i].writer.write(null, record);
+                        continue;
+                    }
+                    if (copies[i] == null) {
+                        copies[i] = new PgCopyWriter(conns[i], targets[i].table + STAGING_SUFFIX, targets[i].columns);
+                        reported[i] = 0;
+                    }
+                    targets[i].writer.write(copies[i], record);
+                    long rows = copies[i].getRows();
+                    importProgress.get(targets[i].table).add(rows - reported[i]);
+                    reported[i] = rows;
+                }
+                offset++;
+                if (offset % importBatchSize == 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (active[i] && offset > resumeAt[i]) {
+                            commitBatch(conns[i], copies[i], journal, targets[i].table, offset, false);
+                            copies[i] = null;
                         }
                     }
-            );
-        }
-        // 为当前批次收集所有评论点赞并批量插入 review_likes 表
-        List<Object[]> likeArgs = new ArrayList<>();
-        for (ReviewRecord review : reviewRecords) {
-            long reviewId = review.getReviewId();
-            long[] likes = review.getLikes();
-            if (likes == null) continue;
-            for (long authorId : likes) {
-                likeArgs.add(new Object[]{reviewId, authorId});
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if (active[i]) {
+                    commitBatch(conns[i], copies[i], journal, targets[i].table, Math.max(offset, resumeAt[i]), true);
+                    copies[i] = null;
+                }
             }
-            if (likeArgs.size() >= BATCH_SIZE) {
-                // 批量插入 review_likes 表
-                jdbcTemplate.batchUpdate(
-                        "INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?)",
-                        likeArgs
-                );
-                likeArgs.clear();
+        } catch (SQLException | RuntimeException e) {
+            // 放弃未提交的批次；已提交的批次连同检查点保留，供下次续传
+            for (int i = 0; i < n; i++) {
+                try {
+                    if (copies[i] != null) {
+                        copies[i].close();
+                    }
+                    if (conns[i] != null) {
+                        conns[i].rollback();
+                    }
+                } catch (SQLException | IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        } finally {
+            for (int i = 0; i < n; i++) {
+                if (conns[i] != null) {
+                    conns[i].setAutoCommit(true);
+                    if (i > 0) {
+                        conns[i].close();
+                    }
+                }
+            }
+        }
+    }
+
+    // 结束当前批次的 COPY，并与导入日志的检查点在同一事务中提交
+    private static void commitBatch(Connection conn, PgCopyWriter copy, ImportJournal journal, String table,
+                                    long committedRecords, boolean done) throws SQLException {
+        if (copy != null) {
+            copy.finish();
+        }
+        journal.checkpoint(conn, table, committedRecords, done);
+        conn.commit();
+    }
+
+    private static Target<UserRecord> userTarget() {
+        return new Target<>("users",
+                "AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted",
+                (copy, user) -> {
+                    if (copy != null) writeUser(copy, user);
+                });
+    }
+
+    //遍历user表，完成following与follower关联表
+    private static Target<UserRecord> followTarget(FollowCounts followCounts) {
+        PairSet seenFollows = new PairSet(1 << 16);
+        return new Target<>("user_follows", "FollowerId, FollowingId",
+                (copy, user) -> writeFollows(copy, seenFollows, followCounts, user));
+    }
+
+    private static Target<RecipeRecord> recipeTarget() {
+        return new Target<>("recipes",
+                "RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, DatePublished, Description, RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent, SaturatedFatContent, CholesterolContent, SodiumContent, CarbohydrateContent, FiberContent, SugarContent, ProteinContent, RecipeServings, RecipeYield, IngredientCount",
+                (copy, recipe) -> {
+                    if (copy != null) writeRecipe(copy, recipe);
+                });
+    }
+
+    // 收集所有配料写入 recipe_ingredients 表
+    private static Target<RecipeRecord> ingredientTarget() {
+        IngredientPairs seenIngredients = new IngredientPairs(1 << 16);
+        return new Target<>("recipe_ingredients", "RecipeId, IngredientPart",
+                (copy, recipe) -> writeIngredients(copy, seenIngredients, recipe));
+    }
+
+    private static Target<ReviewRecord> reviewTarget() {
+        return new Target<>("reviews",
+                "ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified",
+                (copy, review) -> {
+                    if (copy != null) writeReview(copy, review);
+                });
+    }
+
+    // 评论点赞写入 review_likes 表
+    private static Target<ReviewRecord> likeTarget() {
+        return new Target<>("review_likes", "ReviewId, AuthorId",
+                (copy, review) -> {
+                    if (copy != null) writeLikes(copy, review);
+                });
+    }
+
+    private static void writeUser(PgCopyWriter copy, UserRecord user) {
+        copy.field(user.getAuthorId())
+                .field(user.getAuthorName())
+                .field(user.getGender())
+                .field(user.getAge())
+                // 粉丝数/关注数在关注边导入后由 applyFollowCounts 按实际关系填写
+                .field(0)
+                .field(0)
+                .field(user.getPassword())
+                .field(user.isDeleted())
+                .endRow();
+    }
+
+    private static void writeFollows(PgCopyWriter copy, PairSet seenFollows, FollowCounts followCounts, UserRecord user) {
+        long authorId = user.getAuthorId();
+        // 用户关注的其他用户 -> (FollowerId = authorId, FollowingId = id)
+        long[] followingUsers = user.getFollowingUsers();
+        if (followingUsers != null) {
+            for (long fid : followingUsers) {
+                if (fid == authorId) continue; // skip self-follow
+                // 去重
+                if (seenFollows.add(authorId, fid)) {
+                    followCounts.add(authorId, fid);
+                    if (copy != null) copy.field(authorId).field(fid).endRow();
+                }
             }
         }
-        // 插入剩余的
-        if (!likeArgs.isEmpty()) {
-            jdbcTemplate.batchUpdate(
-                    "INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?)",
-                    likeArgs
-            );
+
+        // 用户的粉丝 -> (FollowerId = fid, FollowingId = authorId)
+        long[] followerUsers = user.getFollowerUsers();
+        if (followerUsers != null) {
+            for (long fid : followerUsers) {
+                if (fid == authorId) continue; // skip self-follow
+                if (seenFollows.add(fid, authorId)) {
+                    followCounts.add(fid, authorId);
+                    if (copy != null) copy.field(fid).field(authorId).endRow();
+                }
+            }
         }
     }
 
+    private static void writeRecipe(PgCopyWriter copy, RecipeRecord recipe) {
+        copy.field(recipe.getRecipeId())
+                .field(recipe.getName())
+                .field(recipe.getAuthorId())
+                .field(recipe.getCookTime())
+                .field(recipe.getPrepTime())
+                .field(recipe.getTotalTime())
+                // datePublished may be null
+                .field(recipe.getDatePublished())
+                .field(recipe.getDescription())
+                .field(recipe.getRecipeCategory())
+                .field(recipe.getAggregatedRating())
+                .field(recipe.getReviewCount())
+                .field(recipe.getCalories())
+                .field(recipe.getFatContent())
+                .field(recipe.getSaturatedFatContent())
+                .field(recipe.getCholesterolContent())
+                .field(recipe.getSodiumContent())
+                .field(recipe.getCarbohydrateContent())
+                .field(recipe.getFiberContent())
+                .field(recipe.getSugarContent())
+                .field(recipe.getProteinContent())
+                .field(recipe.getRecipeServings())
+                .field(recipe.getRecipeYield())
+                .field(ingredientCount(recipe))
+                .endRow();
+    }
 
-    private void createTables() {
+    // 菜谱写入 recipe_ingredients 的行数：与 writeIngredients 的去重规则一致（去首尾空白后按小写判重）
+    private static int ingredientCount(RecipeRecord recipe) {
+        String[] parts = recipe.getRecipeIngredientParts();
+        if (parts == null) return 0;
+        Set<String> distinct = new HashSet<>();
+        for (String part : parts) {
+            if (part != null) distinct.add(part.trim().toLowerCase());
+        }
+        return distinct.size();
+    }
+
+    // COPY 不支持 ON CONFLICT，因此必须在内存中对 (RecipeId, IngredientPart) 去重，防止主键冲突
+    private static void writeIngredients(PgCopyWriter copy, IngredientPairs seenIngredients, RecipeRecord recipe) {
+        String[] parts = recipe.getRecipeIngredientParts();
+        if (parts == null) return;
+        for (String part : parts) {
+            if (part == null) continue;
+            String normalized = part.trim();
+            if (seenIngredients.add(recipe.getRecipeId(), normalized) && copy != null) {
+                copy.field(recipe.getRecipeId()).field(normalized).endRow();
+            }
+        }
+    }
+
+    private static void writeReview(PgCopyWriter copy, ReviewRecord review) {
+        copy.field(review.getReviewId())
+                .field(review.getRecipeId())
+                .field(review.getAuthorId())
+                // Rating 列为 INTEGER，与原先 setFloat 的取整方式保持一致
+                .field((int) Math.rint(review.getRating()))
+                .field(review.getReview())
+                // dateSubmitted / dateModified may be null
+                .field(review.getDateSubmitted())
+                .field(review.getDateModified())
+                .endRow();
+    }
+
+    private static void writeLikes(PgCopyWriter copy, ReviewRecord review) {
+        long[] likes = review.getLikes();
+        if (likes == null) return;
+        for (long authorId : likes) {
+            copy.field(review.getReviewId()).field(authorId).endRow();
+        }
+    }
+
+    // (a, b) 组合去重：两个 id 都在 32 位范围内时打包成 long，否则退回字符串键
+    private static class PairSet {
+
+        private final LongHashSet packed;
+
+        private final Set<String> overflow = new HashSet<>();
+
+        PairSet(int expectedSize) {
+            packed = new LongHashSet(expectedSize);
+        }
+
+        boolean add(long a, long b) {
+            if (LongHashSet.packable(a) && LongHashSet.packable(b)) {
+                return packed.add(LongHashSet.pack(a, b));
+            }
+            return overflow.add(a + "-" + b);
+        }
+    }
+
+    // 每个用户的粉丝数与关注数，随关注边去重一起累加
+    private static class FollowCounts {
+
+        @FunctionalInterface
+        interface Consumer {
+            void accept(long authorId, int followers, int following);
+        }
+
+        private final LongIntHashMap followers = new LongIntHashMap(1 << 14);
+
+        private final LongIntHashMap following = new LongIntHashMap(1 << 14);
+
+        void add(long followerId, long followingId) {
+            following.increment(followerId);
+            followers.increment(followingId);
+        }
+
+        void forEach(Consumer consumer) {
+            followers.forEach((authorId, count) -> consumer.accept(authorId, count, following.get(authorId)));
+            following.forEach((authorId, count) -> {
+                if (!followers.containsKey(authorId)) {
+                    consumer.accept(authorId, 0, count);
+                }
+            });
+        }
+    }
+
+    // 配料名（小写）先映射为整数编号，再与 RecipeId 组合去重；配料名重复度很高，字典很小
+    private static class IngredientPairs {
+
+        private final Map<String, Integer> ingredientIds = new HashMap<>();
+
+        private final PairSet pairs;
+
+        IngredientPairs(int expectedSize) {
+            pairs = new PairSet(expectedSize);
+        }
+
+        boolean add(long recipeId, String ingredient) {
+            int ingredientId = ingredientIds.computeIfAbsent(ingredient.toLowerCase(), k -> ingredientIds.size());
+            return pairs.add(recipeId, ingredientId);
+        }
+    }
+
+    // 只建立带列定义的裸表；主键、CHECK 与外键由 addConstraints 单独建立
+    private void createTables(String suffix, boolean unlogged) {
+        String create = unlogged ? "CREATE UNLOGGED TABLE IF NOT EXISTS " : "CREATE TABLE IF NOT EXISTS ";
         String[] createTableSQLs = {
                 // 创建users表
-                "CREATE TABLE IF NOT EXISTS users (" +
-                        "    AuthorId BIGINT PRIMARY KEY, " +
+                create + "users" + suffix + " (" +
+                        "    AuthorId BIGINT NOT NULL, " +
                         "    AuthorName VARCHAR(255) NOT NULL, " +
-                        "    Gender VARCHAR(10) CHECK (Gender IN ('Male', 'Female')), " +
-                        "    Age INTEGER CHECK (Age > 0), " +
-                        "    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0), " +
-                        "    Following INTEGER DEFAULT 0 CHECK (Following >= 0), " +
+                        "    Gender VARCHAR(10), " +
+                        "    Age INTEGER, " +
+                        "    Followers INTEGER DEFAULT 0, " +
+                        "    Following INTEGER DEFAULT 0, " +
                         "    Password VARCHAR(255), " +
                         "    IsDeleted BOOLEAN DEFAULT FALSE" +
                         ")",
 
                 // 创建recipes表
-                "CREATE TABLE IF NOT EXISTS recipes (" +
-                        "    RecipeId BIGINT PRIMARY KEY, " +
+                create + "recipes" + suffix + " (" +
+                        "    RecipeId BIGINT NOT NULL, " +
                         "    Name VARCHAR(500) NOT NULL, " +
                         "    AuthorId BIGINT NOT NULL, " +
                         "    CookTime VARCHAR(50), " +
@@ -323,8 +947,8 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    DatePublished TIMESTAMP, " +
                         "    Description TEXT, " +
                         "    RecipeCategory VARCHAR(255), " +
-                        "    AggregatedRating DECIMAL(3,2) CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5), " +
-                        "    ReviewCount INTEGER DEFAULT 0 CHECK (ReviewCount >= 0), " +
+                        "    AggregatedRating DECIMAL(3,2), " +
+                        "    ReviewCount INTEGER DEFAULT 0, " +
                         "    Calories DECIMAL(10,2), " +
                         "    FatContent DECIMAL(10,2), " +
                         "    SaturatedFatContent DECIMAL(10,2), " +
@@ -336,47 +960,37 @@ public class DatabaseServiceImpl implements DatabaseService {
                         "    ProteinContent DECIMAL(10,2), " +
                         "    RecipeServings VARCHAR(100), " +
                         "    RecipeYield VARCHAR(100), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
+                        // recipe_ingredients 中的行数，供复杂度排行直接走索引而不必聚合全表
+                        "    IngredientCount INTEGER NOT NULL DEFAULT 0" +
                         ")",
 
                 // 创建reviews表
-                "CREATE TABLE IF NOT EXISTS reviews (" +
-                        "    ReviewId BIGINT PRIMARY KEY, " +
+                create + "reviews" + suffix + " (" +
+                        "    ReviewId BIGINT NOT NULL, " +
                         "    RecipeId BIGINT NOT NULL, " +
                         "    AuthorId BIGINT NOT NULL, " +
                         "    Rating INTEGER, " +
                         "    Review TEXT, " +
                         "    DateSubmitted TIMESTAMP, " +
-                        "    DateModified TIMESTAMP, " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
+                        "    DateModified TIMESTAMP" +
                         ")",
 
                 // 创建recipe_ingredients表
-                "CREATE TABLE IF NOT EXISTS recipe_ingredients (" +
-                        "    RecipeId BIGINT, " +
-                        "    IngredientPart VARCHAR(500), " +
-                        "    PRIMARY KEY (RecipeId, IngredientPart), " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId)" +
+                create + "recipe_ingredients" + suffix + " (" +
+                        "    RecipeId BIGINT NOT NULL, " +
+                        "    IngredientPart VARCHAR(500) NOT NULL" +
                         ")",
 
                 // 创建review_likes表
-                "CREATE TABLE IF NOT EXISTS review_likes (" +
-                        "    ReviewId BIGINT, " +
-                        "    AuthorId BIGINT, " +
-                        "    PRIMARY KEY (ReviewId, AuthorId), " +
-                        "    FOREIGN KEY (ReviewId) REFERENCES reviews(ReviewId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
+                create + "review_likes" + suffix + " (" +
+                        "    ReviewId BIGINT NOT NULL, " +
+                        "    AuthorId BIGINT NOT NULL" +
                         ")",
 
                 // 创建user_follows表
-                "CREATE TABLE IF NOT EXISTS user_follows (" +
-                        "    FollowerId BIGINT, " +
-                        "    FollowingId BIGINT, " +
-                        "    PRIMARY KEY (FollowerId, FollowingId), " +
-                        "    FOREIGN KEY (FollowerId) REFERENCES users(AuthorId), " +
-                        "    FOREIGN KEY (FollowingId) REFERENCES users(AuthorId), " +
-                        "    CHECK (FollowerId != FollowingId)" +
+                create + "user_follows" + suffix + " (" +
+                        "    FollowerId BIGINT NOT NULL, " +
+                        "    FollowingId BIGINT NOT NULL" +
                         ")"
         };
 
@@ -385,6 +999,461 @@ public class DatabaseServiceImpl implements DatabaseService {
         }
     }
 
+    // 每张表的主键与 CHECK 约束（约束名与直接在 CREATE TABLE 中声明时 PostgreSQL 生成的名字一致）
+    private static String[] keyAndCheckConstraints(String table) {
+        switch (table) {
+            case "users":
+                return new String[]{
+                        "pkey PRIMARY KEY (AuthorId)",
+                        "gender_check CHECK (Gender IN ('Male', 'Female'))",
+                        "age_check CHECK (Age > 0)",
+                        "followers_check CHECK (Followers >= 0)",
+                        "following_check CHECK (Following >= 0)"
+                };
+            case "recipes":
+                return new String[]{
+                        "pkey PRIMARY KEY (RecipeId)",
+                        "aggregatedrating_check CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5)",
+                        "reviewcount_check CHECK (ReviewCount >= 0)",
+                        "ingredientcount_check CHECK (IngredientCount >= 0)"
+                };
+            case "reviews":
+                return new String[]{"pkey PRIMARY KEY (ReviewId)"};
+            case "recipe_ingredients":
+                return new String[]{"pkey PRIMARY KEY (RecipeId, IngredientPart)"};
+            case "review_likes":
+                return new String[]{"pkey PRIMARY KEY (ReviewId, AuthorId)"};
+            case "user_follows":
+                return new String[]{
+                        "pkey PRIMARY KEY (FollowerId, FollowingId)",
+                        "check CHECK (FollowerId != FollowingId)"
+                };
+            default:
+                throw new IllegalArgumentException("Unknown table " + table);
+        }
+    }
+
+    // 每张表的外键：{约束名后缀, 本表列, 被引用表, 被引用列}
+    private static String[][] foreignKeys(String table) {
+        switch (table) {
+            case "recipes":
+                return new String[][]{{"authorid_fkey", "AuthorId", "users", "AuthorId"}};
+            case "reviews":
+                return new String[][]{
+                        {"recipeid_fkey", "RecipeId", "recipes", "RecipeId"},
+                        {"authorid_fkey", "AuthorId", "users", "AuthorId"}
+                };
+            case "recipe_ingredients":
+                return new String[][]{{"recipeid_fkey", "RecipeId", "recipes", "RecipeId"}};
+            case "review_likes":
+                return new String[][]{
+                        {"reviewid_fkey", "ReviewId", "reviews", "ReviewId"},
+                        {"authorid_fkey", "AuthorId", "users", "AuthorId"}
+                };
+            case "user_follows":
+                return new String[][]{
+                        {"followerid_fkey", "FollowerId", "users", "AuthorId"},
+                        {"followingid_fkey", "FollowingId", "users", "AuthorId"}
+                };
+            default:
+                return new String[0][];
+        }
+    }
+
+    /**
+     * Adds primary keys, CHECKs and foreign keys to the tables with the given suffix.
+     * <p>
+     * Each table gets its primary key and CHECKs in one {@code ALTER TABLE} (one scan), and the tables
+     * are processed concurrently. Foreign keys are then added {@code NOT VALID}, which only needs a brief
+     * lock, and validated with one task per table. {@code VALIDATE CONSTRAINT} takes {@code SHARE UPDATE EXCLUSIVE}
+     * on its own table, which conflicts with itself, so validations of the same table run one after another, and only
+     * a {@code ROW SHARE} lock on the referenced table, so different tables are validated in parallel.
+     */
+    private void addConstraints(ExecutorService pool, String suffix) {
+        List<CopyTask> keyTasks = new ArrayList<>();
+        for (String table : TABLES) {
+            StringBuilder sql = new StringBuilder("ALTER TABLE " + table + suffix);
+            String[] constraints = keyAndCheckConstraints(table);
+            for (int i = 0; i < constraints.length; i++) {
+                sql.append(i == 0 ? " " : ", ").append("ADD CONSTRAINT ").append(table).append(suffix).append('_').append(constraints[i]);
+            }
+            keyTasks.add(conn -> execute(conn, sql.toString()));
+        }
+        runStage(pool, keyTasks.toArray(new CopyTask[0]));
+
+        List<CopyTask> validateTasks = new ArrayList<>();
+        for (String table : TABLES) {
+            List<String> validations = new ArrayList<>();
+            for (String[] fk : foreignKeys(table)) {
+                String name = table + suffix + "_" + fk[0];
+                jdbcTemplate.execute("ALTER TABLE " + table + suffix + " ADD CONSTRAINT " + name
+                        + " FOREIGN KEY (" + fk[1] + ") REFERENCES " + fk[2] + suffix + "(" + fk[3] + ") NOT VALID");
+                validations.add("ALTER TABLE " + table + suffix + " VALIDATE CONSTRAINT " + name);
+            }
+            if (!validations.isEmpty()) {
+                // 同一张表的校验互相阻塞，放在一个任务里依次执行，不占用其他表的并行槽位
+                validateTasks.add(conn -> {
+                    for (String sql : validations) {
+                        execute(conn, sql);
+                    }
+                });
+            }
+        }
+        runStage(pool, validateTasks.toArray(new CopyTask[0]));
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+
+
+    /**
+     * Applies a snapshot delta to an already imported database in one transaction, instead of reloading everything.
+     * <p>
+     * Records in the lists are inserted, or replace the stored row with the same id ({@code INSERT ... ON CONFLICT
+     * DO UPDATE}); a record's ingredients and likes replace the stored ones by set difference. A user record owns the
+     * relations it follows: stored edges whose follower is a delta user and that no delta record lists are removed,
+     * while edges followed by users outside the delta are left alone. Listed edges whose other end does not exist are
+     * skipped and reported.
+     * <p>
+     * Deletions follow the services: deleted users are soft-deleted like {@link UserServiceImpl#deleteAccount}
+     * ({@code IsDeleted} set, every follow relation removed, recipes and reviews kept), while deleted recipes and
+     * reviews are removed like {@code deleteRecipe} and {@code deleteReview}, with their ingredients, reviews and
+     * likes. Derived columns are then recomputed only where something changed: Followers/Following for users whose
+     * relations changed, AggregatedRating/ReviewCount for recipes whose reviews changed. As in {@link #importData},
+     * the Followers/Following fields of the records are ignored.
+     *
+     * @return counts of the upserted and deleted records, and {@code droppedFollows}, the listed follow relations
+     * that were skipped because one side does not exist
+     */
+    @Transactional
+    public Map<String, Object> importDelta(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords,
+            long[] deletedReviewIds,
+            long[] deletedUserIds,
+            long[] deletedRecipeIds) {
+
+        Set<Long> affectedUsers = new HashSet<>();
+        Set<Long> affectedRecipes = new HashSet<>();
+
+        deleteRows(deletedReviewIds, deletedUserIds, deletedRecipeIds, affectedUsers, affectedRecipes);
+        List<String> droppedFollows = upsertUsers(userRecords, affectedUsers);
+        upsertRecipes(recipeRecords);
+        upsertReviews(reviewRecords, affectedRecipes);
+
+        // 软删除的用户也在其中，关注关系已全部删除，计数重算为 0
+        refreshFollowCounts(toLongs(affectedUsers));
+        refreshRatingStats(toLongs(affectedRecipes));
+        // 作者改名、配料替换等都会改变已组装的菜谱，整体清空比逐条追踪更稳妥
+        recipeCache.clear();
+        // 增量可能改密码、删用户
+        authCache.clear();
+        // 增量带来的 id 可能落在已预取的号段内
+        idAllocator.reset();
+        // 时间线在提交后于后台重建，此前 feed 不使用它
+        feedTimeline.rebuildLater();
+        // 增量重算了受影响用户的关注计数，排行榜整体重载；再核对一遍全部计数
+        followRatioBoard.clear();
+        followRatioBoard.reconcile();
+        if (!droppedFollows.isEmpty()) {
+            log.warn("Delta import skipped {} follow relations whose other side does not exist, e.g. {}",
+                    droppedFollows.size(), droppedFollows.subList(0, Math.min(droppedFollows.size(), 10)));
+        }
+        log.info("Delta import applied: {} users, {} recipes, {} reviews upserted; {} users, {} recipes, {} reviews deleted",
+                userRecords.size(), recipeRecords.size(), reviewRecords.size(),
+                deletedUserIds.length, deletedRecipeIds.length, deletedReviewIds.length);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("usersUpserted", userRecords.size());
+        result.put("recipesUpserted", recipeRecords.size());
+        result.put("reviewsUpserted", reviewRecords.size());
+        result.put("usersDeleted", deletedUserIds.length);
+        result.put("recipesDeleted", deletedRecipeIds.length);
+        result.put("reviewsDeleted", deletedReviewIds.length);
+        result.put("droppedFollows", droppedFollows.size());
+        return result;
+    }
+
+    // 食谱与评论按依赖顺序物理删除：点赞 -> 评论 -> 配料 -> 食谱；用户与 deleteAccount 一样软删除，
+    // 只删除其关注关系，菜谱、评论与点赞保留
+    private void deleteRows(long[] reviewIds, long[] userIds, long[] recipeIds,
+                            Set<Long> affectedUsers, Set<Long> affectedRecipes) {
+        if (recipeIds.length > 0) {
+            reviewIds = concat(reviewIds, toLongs(jdbcTemplate.queryForList(
+                    "SELECT ReviewId FROM reviews WHERE RecipeId = ANY(?)", Long.class, (Object) recipeIds)));
+        }
+        jdbcTemplate.update("DELETE FROM review_likes WHERE ReviewId = ANY(?)", (Object) reviewIds);
+        affectedRecipes.addAll(jdbcTemplate.queryForList(
+                "DELETE FROM reviews WHERE ReviewId = ANY(?) RETURNING RecipeId", Long.class, (Object) reviewIds));
+        jdbcTemplate.update("DELETE FROM recipe_ingredients WHERE RecipeId = ANY(?)", (Object) recipeIds);
+        jdbcTemplate.update("DELETE FROM recipes WHERE RecipeId = ANY(?)", (Object) recipeIds);
+        for (long id : recipeIds) {
+            affectedRecipes.remove(id);
+        }
+
+        jdbcTemplate.query("DELETE FROM user_follows WHERE FollowerId = ANY(?) OR FollowingId = ANY(?) RETURNING FollowerId, FollowingId",
+                rs -> {
+                    affectedUsers.add(rs.getLong(1));
+                    affectedUsers.add(rs.getLong(2));
+                }, userIds, userIds);
+        affectedUsers.addAll(jdbcTemplate.queryForList(
+                "UPDATE users SET IsDeleted = TRUE WHERE AuthorId = ANY(?) RETURNING AuthorId", Long.class, (Object) userIds));
+    }
+
+    // 插入或更新用户，并用差集替换这些用户关注的关系；Followers/Following 之后统一重算。
+    // 返回因另一端用户不存在而跳过的关注关系（"FollowerId->FollowingId"）
+    private List<String> upsertUsers(List<UserRecord> userRecords, Set<Long> affectedUsers) {
+        if (userRecords.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (UserRecord user : userRecords) {
+            rows.add(new Object[]{user.getAuthorId(), user.getAuthorName(), user.getGender(), user.getAge(),
+                    user.getPassword(), user.isDeleted()});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO users (AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted)
+                VALUES (?, ?, ?, ?, 0, 0, ?, ?)
+                ON CONFLICT (AuthorId) DO UPDATE
+                SET AuthorName = EXCLUDED.AuthorName, Gender = EXCLUDED.Gender, Age = EXCLUDED.Age,
+                    Password = EXCLUDED.Password, IsDeleted = EXCLUDED.IsDeleted
+                """, rows);
+
+        // 与全量导入相同的去重规则：两个方向的列表取并集，忽略自己关注自己
+        long[] userIds = new long[userRecords.size()];
+        PairSet seenFollows = new PairSet(userRecords.size() * 8);
+        List<Long> followerIds = new ArrayList<>();
+        List<Long> followingIds = new ArrayList<>();
+        for (int i = 0; i < userIds.length; i++) {
+            UserRecord user = userRecords.get(i);
+            long authorId = user.getAuthorId();
+            userIds[i] = authorId;
+            affectedUsers.add(authorId);
+            if (user.getFollowingUsers() != null) {
+                for (long fid : user.getFollowingUsers()) {
+                    if (fid != authorId && seenFollows.add(authorId, fid)) {
+                        followerIds.add(authorId);
+                        followingIds.add(fid);
+                    }
+                }
+            }
+            if (user.getFollowerUsers() != null) {
+                for (long fid : user.getFollowerUsers()) {
+                    if (fid != authorId && seenFollows.add(fid, authorId)) {
+                        followerIds.add(fid);
+                        followingIds.add(authorId);
+                    }
+                }
+            }
+        }
+        long[] followers = toLongs(followerIds);
+        long[] followings = toLongs(followingIds);
+        // 关注边归关注者所有：只删除增量用户自己关注、且增量中不再列出的边；
+        // 增量之外的用户关注增量用户的边由那些用户的记录决定，不能因为增量用户的粉丝列表缺少它而删除
+        jdbcTemplate.query("""
+                DELETE FROM user_follows f
+                WHERE f.FollowerId = ANY(?)
+                  AND NOT EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) d(FollowerId, FollowingId)
+                                  WHERE d.FollowerId = f.FollowerId AND d.FollowingId = f.FollowingId)
+                RETURNING f.FollowerId, f.FollowingId
+                """, rs -> {
+            affectedUsers.add(rs.getLong(1));
+            affectedUsers.add(rs.getLong(2));
+        }, userIds, followers, followings);
+        List<String> dropped = jdbcTemplate.query("""
+                SELECT d.FollowerId, d.FollowingId FROM unnest(?::bigint[], ?::bigint[]) d(FollowerId, FollowingId)
+                WHERE NOT EXISTS (SELECT 1 FROM users WHERE AuthorId = d.FollowerId)
+                   OR NOT EXISTS (SELECT 1 FROM users WHERE AuthorId = d.FollowingId)
+                """, (rs, rowNum) -> rs.getLong(1) + "->" + rs.getLong(2), followers, followings);
+        jdbcTemplate.query("""
+                INSERT INTO user_follows (FollowerId, FollowingId)
+                SELECT d.FollowerId, d.FollowingId FROM unnest(?::bigint[], ?::bigint[]) d(FollowerId, FollowingId)
+                WHERE EXISTS (SELECT 1 FROM users WHERE AuthorId = d.FollowerId)
+                  AND EXISTS (SELECT 1 FROM users WHERE AuthorId = d.FollowingId)
+                ON CONFLICT DO NOTHING
+                RETURNING FollowerId, FollowingId
+                """, rs -> {
+            affectedUsers.add(rs.getLong(1));
+            affectedUsers.add(rs.getLong(2));
+        }, followers, followings);
+        return dropped;
+    }
+
+    // 插入或更新食谱，并用差集替换配料；食谱自带的 AggregatedRating/ReviewCount 与全量导入一样直接写入
+    private void upsertRecipes(List<RecipeRecord> recipeRecords) {
+        if (recipeRecords.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (RecipeRecord recipe : recipeRecords) {
+            rows.add(new Object[]{recipe.getRecipeId(), recipe.getName(), recipe.getAuthorId(),
+                    recipe.getCookTime(), recipe.getPrepTime(), recipe.getTotalTime(), recipe.getDatePublished(),
+                    recipe.getDescription(), recipe.getRecipeCategory(), recipe.getAggregatedRating(),
+                    recipe.getReviewCount(), recipe.getCalories(), recipe.getFatContent(),
+                    recipe.getSaturatedFatContent(), recipe.getCholesterolContent(), recipe.getSodiumContent(),
+                    recipe.getCarbohydrateContent(), recipe.getFiberContent(), recipe.getSugarContent(),
+                    recipe.getProteinContent(), recipe.getRecipeServings(), recipe.getRecipeYield()});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO recipes (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, DatePublished,
+                                     Description, RecipeCategory, AggregatedRating, ReviewCount, Calories, FatContent,
+                                     SaturatedFatContent, CholesterolContent, SodiumContent, CarbohydrateContent,
+                                     FiberContent, SugarContent, ProteinContent, RecipeServings, RecipeYield)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (RecipeId) DO UPDATE
+                SET Name = EXCLUDED.Name, AuthorId = EXCLUDED.AuthorId, CookTime = EXCLUDED.CookTime,
+                    PrepTime = EXCLUDED.PrepTime, TotalTime = EXCLUDED.TotalTime,
+                    DatePublished = EXCLUDED.DatePublished, Description = EXCLUDED.Description,
+                    RecipeCategory = EXCLUDED.RecipeCategory, AggregatedRating = EXCLUDED.AggregatedRating,
+                    ReviewCount = EXCLUDED.ReviewCount, Calories = EXCLUDED.Calories,
+                    FatContent = EXCLUDED.FatContent, SaturatedFatContent = EXCLUDED.SaturatedFatContent,
+                    CholesterolContent = EXCLUDED.CholesterolContent, SodiumContent = EXCLUDED.SodiumContent,
+                    CarbohydrateContent = EXCLUDED.CarbohydrateContent, FiberContent = EXCLUDED.FiberContent,
+                    SugarContent = EXCLUDED.SugarContent, ProteinContent = EXCLUDED.ProteinContent,
+                    RecipeServings = EXCLUDED.RecipeServings, RecipeYield = EXCLUDED.RecipeYield
+                """, rows);
+
+        long[] recipeIds = new long[recipeRecords.size()];
+        IngredientPairs seenIngredients = new IngredientPairs(recipeRecords.size() * 8);
+        List<Long> partRecipeIds = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < recipeIds.length; i++) {
+            RecipeRecord recipe = recipeRecords.get(i);
+            recipeIds[i] = recipe.getRecipeId();
+            if (recipe.getRecipeIngredientParts() == null) continue;
+            for (String part : recipe.getRecipeIngredientParts()) {
+                if (part == null) continue;
+                String normalized = part.trim();
+                if (seenIngredients.add(recipe.getRecipeId(), normalized)) {
+                    partRecipeIds.add(recipe.getRecipeId());
+                    parts.add(normalized);
+                }
+            }
+        }
+        long[] desiredRecipeIds = toLongs(partRecipeIds);
+        String[] desiredParts = parts.toArray(new String[0]);
+        jdbcTemplate.update("""
+                DELETE FROM recipe_ingredients ri
+                WHERE ri.RecipeId = ANY(?)
+                  AND NOT EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::varchar[]) d(RecipeId, IngredientPart)
+                                  WHERE d.RecipeId = ri.RecipeId AND d.IngredientPart = ri.IngredientPart)
+                """, recipeIds, desiredRecipeIds, desiredParts);
+        jdbcTemplate.update("""
+                INSERT INTO recipe_ingredients (RecipeId, IngredientPart)
+                SELECT * FROM unnest(?::bigint[], ?::varchar[])
+                ON CONFLICT DO NOTHING
+                """, desiredRecipeIds, desiredParts);
+        jdbcTemplate.update("""
+                UPDATE recipes r
+                SET IngredientCount = (SELECT COUNT(*) FROM recipe_ingredients ri WHERE ri.RecipeId = r.RecipeId)
+                WHERE r.RecipeId = ANY(?)
+                """, (Object) recipeIds);
+    }
+
+    // 插入或更新评论，并用差集替换点赞；评论新旧所属的食谱都需要重算评分
+    private void upsertReviews(List<ReviewRecord> reviewRecords, Set<Long> affectedRecipes) {
+        if (reviewRecords.isEmpty()) {
+            return;
+        }
+        long[] reviewIds = new long[reviewRecords.size()];
+        List<Object[]> rows = new ArrayList<>();
+        List<Long> likeReviewIds = new ArrayList<>();
+        List<Long> likeAuthorIds = new ArrayList<>();
+        for (int i = 0; i < reviewIds.length; i++) {
+            ReviewRecord review = reviewRecords.get(i);
+            reviewIds[i] = review.getReviewId();
+            affectedRecipes.add(review.getRecipeId());
+            rows.add(new Object[]{review.getReviewId(), review.getRecipeId(), review.getAuthorId(),
+                    (int) Math.rint(review.getRating()), review.getReview(),
+                    review.getDateSubmitted(), review.getDateModified()});
+            if (review.getLikes() != null) {
+                for (long authorId : review.getLikes()) {
+                    likeReviewIds.add(review.getReviewId());
+                    likeAuthorIds.add(authorId);
+                }
+            }
+        }
+        affectedRecipes.addAll(jdbcTemplate.queryForList(
+                "SELECT RecipeId FROM reviews WHERE ReviewId = ANY(?)", Long.class, (Object) reviewIds));
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (ReviewId) DO UPDATE
+                SET RecipeId = EXCLUDED.RecipeId, AuthorId = EXCLUDED.AuthorId, Rating = EXCLUDED.Rating,
+                    Review = EXCLUDED.Review, DateSubmitted = EXCLUDED.DateSubmitted,
+                    DateModified = EXCLUDED.DateModified
+                """, rows);
+
+        long[] desiredReviewIds = toLongs(likeReviewIds);
+        long[] desiredAuthorIds = toLongs(likeAuthorIds);
+        jdbcTemplate.update("""
+                DELETE FROM review_likes rl
+                WHERE rl.ReviewId = ANY(?)
+                  AND NOT EXISTS (SELECT 1 FROM unnest(?::bigint[], ?::bigint[]) d(ReviewId, AuthorId)
+                                  WHERE d.ReviewId = rl.ReviewId AND d.AuthorId = rl.AuthorId)
+                """, reviewIds, desiredReviewIds, desiredAuthorIds);
+        jdbcTemplate.update("""
+                INSERT INTO review_likes (ReviewId, AuthorId)
+                SELECT * FROM unnest(?::bigint[], ?::bigint[])
+                ON CONFLICT DO NOTHING
+                """, desiredReviewIds, desiredAuthorIds);
+    }
+
+    // 只为给定用户按 user_follows 重算粉丝数与关注数
+    private void refreshFollowCounts(long[] userIds) {
+        if (userIds.length == 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                UPDATE users u
+                SET Followers = COALESCE(c.Followers, 0), Following = COALESCE(c.Following, 0)
+                FROM unnest(?::bigint[]) a(AuthorId)
+                LEFT JOIN (SELECT AuthorId, SUM(Followers) AS Followers, SUM(Following) AS Following
+                           FROM (SELECT FollowingId AS AuthorId, 1 AS Followers, 0 AS Following
+                                 FROM user_follows WHERE FollowingId = ANY(?)
+                                 UNION ALL
+                                 SELECT FollowerId, 0, 1 FROM user_follows WHERE FollowerId = ANY(?)) edges
+                           GROUP BY AuthorId) c ON c.AuthorId = a.AuthorId
+                WHERE u.AuthorId = a.AuthorId
+                """, userIds, userIds, userIds);
+    }
+
+    // 只为给定食谱按 reviews 重算评论数与平均评分（与 ReviewServiceImpl 的计算方式一致）
+    private void refreshRatingStats(long[] recipeIds) {
+        if (recipeIds.length == 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                UPDATE recipes r
+                SET ReviewCount = COALESCE(s.ReviewCount, 0), AggregatedRating = COALESCE(s.AggregatedRating, 0)
+                FROM unnest(?::bigint[]) a(RecipeId)
+                LEFT JOIN (SELECT RecipeId, COUNT(*) AS ReviewCount, ROUND(AVG(Rating), 2) AS AggregatedRating
+                           FROM reviews WHERE RecipeId = ANY(?)
+                           GROUP BY RecipeId) s ON s.RecipeId = a.RecipeId
+                WHERE r.RecipeId = a.RecipeId
+                """, recipeIds, recipeIds);
+    }
+
+    private static long[] toLongs(Collection<Long> values) {
+        long[] result = new long[values.size()];
+        int i = 0;
+        for (Long value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
 
 
     /*
@@ -420,6 +1489,12 @@ public class DatabaseServiceImpl implements DatabaseService {
             stmt.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
+        } finally {
+            recipeCache.clear();
+            authCache.clear();
+            idAllocator.reset();
+            feedTimeline.reset();
+            followRatioBoard.clear();
         }
     }
 
@@ -0,0 +1,519 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional materialized home timeline behind {@link UserServiceImpl#feed}, enabled with
+ * {@code sustc.timeline.enabled=true}.
+ * <p>
+ * {@code user_timeline} holds one row {@code (UserId, DatePublished, RecipeId, AuthorId, RecipeCategory)} per recipe in
+ * a user's feed, so a feed page, with or without a category, is an index-only range read on
+ * {@code (UserId, DatePublished DESC, RecipeId DESC)} instead of a join over all followed authors' recipes. Writes fan out: a new recipe is pushed to its author's followers, a follow backfills the
+ * followee's recipes and an unfollow prunes them, and deleting a recipe or an account retracts its entries.
+ * <p>
+ * Authors with more than {@code sustc.timeline.pull-threshold} followers when the timeline is built are listed in
+ * {@code timeline_pull_authors} and never fanned out, since one of their recipes would cost a row per follower; when the
+ * feed is requested, the newest recipes of each such author the user follows are read from the {@code recipes} index on
+ * {@code (AuthorId, DatePublished DESC, RecipeId DESC)} and merged with the materialized rows. The list is only
+ * recomputed by a rebuild.
+ * <p>
+ * Dates and categories are copied from {@code recipes}; only imports change them, and imports rebuild the timeline.
+ * The tables are derived data and are never built from inside a caller's request: a full import rebuilds them
+ * synchronously, while startup, a delta import ({@link #rebuildLater()}) and {@code db timeline --rebuild} build them on a
+ * background thread. Until a build has been swapped in, {@link #isReady()} is false, writers skip their maintenance and
+ * {@link UserServiceImpl#feed} answers from {@code user_follows} and {@code recipes} as if the timeline were disabled.
+ * The maintenance methods must be called after the caller's own write to those tables, in the same transaction, which
+ * is what lets {@link #rebuild()} hand over to them without losing a write. Every writer of users, recipes and follows
+ * must run with the timeline enabled, or the timeline must be rebuilt afterwards.
+ */
+@Slf4j
+@Component
+public class FeedTimeline implements DisposableBean {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${sustc.timeline.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sustc.timeline.pull-threshold:1000}")
+    private int pullThreshold;
+
+    // 替换时等待写入方释放锁的次数与时限；仍不成功则保持未就绪，读取继续走原查询
+    private static final int REBUILD_ATTEMPTS = 3;
+
+    private static final String SWAP_LOCK_TIMEOUT = "5s";
+
+    // 本进程内时间线是否已与源表一致；未就绪时读取不用时间线，写入也不维护它
+    private volatile boolean ready;
+
+    // 维护调用的次数与其中尚未结束的事务数，重建据此判断构建的快照是否可能漏掉了写入
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "feed-timeline-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 作者不在 timeline_pull_authors 中时才物化
+    private static final String PUSH_AUTHOR = "NOT EXISTS (SELECT 1 FROM timeline_pull_authors p WHERE p.AuthorId = r.AuthorId)";
+
+    private static final String NEXT_ENTRIES_SQL = """
+            INSERT INTO user_timeline_next (UserId, DatePublished, RecipeId, AuthorId, RecipeCategory)
+            SELECT f.FollowerId, r.DatePublished, r.RecipeId, r.AuthorId, r.RecipeCategory
+            FROM user_follows f
+            JOIN recipes r ON r.AuthorId = f.FollowingId
+            JOIN users u ON u.AuthorId = r.AuthorId
+            WHERE u.IsDeleted = FALSE AND NOT EXISTS (
+                SELECT 1 FROM timeline_pull_authors_next p WHERE p.AuthorId = r.AuthorId)""";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether feeds can be read from the timeline; false while it is disabled, not built yet or being rebuilt.
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * Number of recipes in the feed of {@code userId}, optionally only those in {@code category}.
+     */
+    long countFeed(long userId, String category) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT (");
+        appendTimelineEntries(sql, params, userId, category, "COUNT(*)");
+        sql.append(") + (");
+        sql.append("""
+                SELECT COUNT(*)
+                FROM user_follows f
+                JOIN timeline_pull_authors p ON p.AuthorId = f.FollowingId
+                JOIN recipes r ON r.AuthorId = f.FollowingId
+                WHERE f.FollowerId = ?""");
+        params.add(userId);
+        if (category != null) {
+            sql.append(" AND r.RecipeCategory = ?");
+            params.add(category);
+        }
+        sql.append(")");
+        Long count = jdbcTemplate.queryForObject(sql.toString(), Long.class, params.toArray());
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Builds the query of one feed page of {@code userId}: {@code limit} feed items after {@code offset} rows, or after
+     * the {@code after} cursor, in {@code DatePublished DESC, RecipeId DESC} order.
+     * <p>
+     * Each part is ordered and limited on its own before the page is merged and joined with {@code recipes}, so the
+     * materialized part is read in index order and stops after {@code offset + limit} entries. No {@code IsDeleted}
+     * check is needed: deleting an account retracts its entries and removes its follow edges.
+     */
+    String feedPageSql(List<Object> params, long userId, String category, KeysetCursor after, int limit, int offset) {
+        StringBuilder sql = new StringBuilder("""
+                    SELECT
+                        r.RecipeId,
+                        r.Name,
+                        r.AuthorId,
+                        u.AuthorName,
+                        r.DatePublished,
+                        r.AggregatedRating,
+                        r.ReviewCount
+                    FROM (
+                        (""");
+        appendTimelineEntries(sql, params, userId, category, "t.RecipeId, t.DatePublished");
+        if (after != null) {
+            after.appendSeek(sql, params, "t.DatePublished", true, "t.RecipeId");
+        }
+        sql.append(" ORDER BY t.DatePublished DESC, t.RecipeId DESC LIMIT ?)\n        UNION ALL\n        (");
+        params.add(offset + limit);
+        // 每位大 V 只需按索引取最新的 offset + limit 条，再与物化部分合并
+        sql.append("""
+                SELECT x.RecipeId, x.DatePublished
+                FROM user_follows f
+                JOIN timeline_pull_authors p ON p.AuthorId = f.FollowingId AND f.FollowerId = ?
+                CROSS JOIN LATERAL (
+                    SELECT r.RecipeId, r.DatePublished
+                    FROM recipes r
+                    WHERE r.AuthorId = f.FollowingId""");
+        params.add(userId);
+        if (category != null) {
+            sql.append(" AND r.RecipeCategory = ?");
+            params.add(category);
+        }
+        if (after != null) {
+            after.appendSeek(sql, params, "r.DatePublished", true, "r.RecipeId");
+        }
+        sql.append("""
+
+                    ORDER BY r.DatePublished DESC, r.RecipeId DESC
+                    LIMIT ?
+                ) x
+                ORDER BY x.DatePublished DESC, x.RecipeId DESC
+                LIMIT ?)""");
+        params.add(offset + limit);
+        params.add(offset + limit);
+        sql.append("""
+
+                        ORDER BY DatePublished DESC, RecipeId DESC
+                        LIMIT ? OFFSET ?
+                    ) e
+                    JOIN recipes r ON r.RecipeId = e.RecipeId
+                    JOIN users u ON r.AuthorId = u.AuthorId
+                    ORDER BY e.DatePublished DESC, e.RecipeId DESC
+                """);
+        params.add(limit);
+        params.add(offset);
+        return sql.toString();
+    }
+
+    // 物化部分：该用户时间线中的条目，分类也在索引中，无需回表
+    private static void appendTimelineEntries(StringBuilder sql, List<Object> params, long userId, String category,
+                                              String columns) {
+        sql.append("SELECT ").append(columns).append(" FROM user_timeline t WHERE t.UserId = ?");
+        params.add(userId);
+        if (category != null) {
+            sql.append(" AND t.RecipeCategory = ?");
+            params.add(category);
+        }
+    }
+
+    /**
+     * Pushes a new recipe to the timelines of its author's followers.
+     */
+    public void recipeCreated(long recipeId) {
+        if (!maintain()) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO user_timeline (UserId, DatePublished, RecipeId, AuthorId, RecipeCategory)
+                SELECT f.FollowerId, r.DatePublished, r.RecipeId, r.AuthorId, r.RecipeCategory
+                FROM recipes r
+                JOIN user_follows f ON f.FollowingId = r.AuthorId
+                WHERE r.RecipeId = ? AND
+                """ + PUSH_AUTHOR + " ON CONFLICT DO NOTHING", recipeId);
+    }
+
+    /**
+     * Retracts a deleted recipe from every timeline.
+     */
+    public void recipeDeleted(long recipeId) {
+        if (!maintain()) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM user_timeline WHERE RecipeId = ?", recipeId);
+    }
+
+    /**
+     * Backfills the recipes of the users {@code followerId} has just started to follow.
+     */
+    public void followed(long followerId, long... followeeIds) {
+        if (followeeIds.length == 0 || !maintain()) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO user_timeline (UserId, DatePublished, RecipeId, AuthorId, RecipeCategory)
+                SELECT ?, r.DatePublished, r.RecipeId, r.AuthorId, r.RecipeCategory
+                FROM recipes r
+                WHERE r.AuthorId = ANY(?) AND
+                """ + PUSH_AUTHOR + " ON CONFLICT DO NOTHING", followerId, followeeIds);
+    }
+
+    /**
+     * Prunes the recipes of a user {@code followerId} no longer follows.
+     */
+    public void unfollowed(long followerId, long followeeId) {
+        if (!maintain()) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM user_timeline WHERE UserId = ? AND AuthorId = ?", followerId, followeeId);
+    }
+
+    /**
+     * Retracts a deleted account: its own timeline and its recipes in other users' timelines.
+     */
+    public void accountDeleted(long userId) {
+        if (!maintain()) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM user_timeline WHERE UserId = ?", userId);
+        // 按食谱定位，不依赖已删除的关注关系
+        jdbcTemplate.update("""
+                DELETE FROM user_timeline t
+                USING recipes r
+                WHERE r.AuthorId = ? AND t.RecipeId = r.RecipeId
+                """, userId);
+    }
+
+    /**
+     * Marks the timeline stale after a bulk change, e.g. a drop; feeds are read without it until the next rebuild.
+     * Inside a transaction this repeats after completion, since a rebuild in between cannot see the change yet.
+     */
+    public void reset() {
+        ready = false;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    ready = false;
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the timeline stale like {@link #reset()} and rebuilds it on the background thread, after the surrounding
+     * transaction completes (at once outside a transaction). Requests made while a rebuild is queued are merged.
+     */
+    public void rebuildLater() {
+        if (!enabled) {
+            return;
+        }
+        reset();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    submitRebuild();
+                }
+            });
+        } else {
+            submitRebuild();
+        }
+    }
+
+    // 启动时表中可能是其他进程留下的旧数据，一律在后台重建；此前读取走原查询
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildLater();
+    }
+
+    @Override
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    /**
+     * Rebuilds the timeline from {@code user_follows} and {@code recipes} if it is enabled, recomputing which authors
+     * are read on demand. The new tables are built next to the live ones on a connection of their own, without locking
+     * anything but the rows read; meanwhile feeds are read without the timeline and writers skip it.
+     * <p>
+     * The swap runs in a short transaction that first takes {@code SHARE} locks on {@code users}, {@code recipes} and
+     * {@code user_follows}: it waits for the writers in progress and holds off new ones until the swap commits. If a
+     * write may have been missed by the build, the new tables are brought up to date from the source tables under that
+     * lock, and the timeline is marked ready before the commit, so every writer let through afterwards maintains it.
+     * The lock is given up after {@code lock_timeout} or a deadlock and retried, up to {@value #REBUILD_ATTEMPTS} times,
+     * after which the timeline stays unused until the next rebuild.
+     * <p>
+     * Do not call it from inside a request transaction; it holds a connection of its own for the whole build.
+     *
+     * @return {@code pullAuthors, rows, caughtUp, attempts, ready, millis}, or an empty map when the timeline is disabled
+     */
+    public synchronized Map<String, Object> rebuild() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (!enabled) {
+            return stats;
+        }
+        long start = System.currentTimeMillis();
+        ready = false;
+        // 先读计数再读进行中的写入数，与 maintain() 的顺序相反：任何构建快照可能看不到的写入必居其一
+        long before = writes.get();
+        boolean busy = active.get() > 0;
+        try (Connection conn = dataSource.getConnection()) {
+            build(conn, stats);
+            for (int attempt = 1; attempt <= REBUILD_ATTEMPTS && !ready; attempt++) {
+                stats.put("attempts", attempt);
+                try {
+                    swap(conn, busy || attempt > 1 || writes.get() != before, stats);
+                } catch (SQLException e) {
+                    if (!"55P03".equals(e.getSQLState()) && !"40P01".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    log.warn("Feed timeline swap gave up waiting for writers: {}", e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        stats.put("ready", ready);
+        stats.put("millis", System.currentTimeMillis() - start);
+        if (ready) {
+            log.info("Feed timeline rebuilt: {}", stats);
+        } else {
+            log.warn("Feed timeline could not be swapped in after {} attempts, feeds are read without it: {}", REBUILD_ATTEMPTS, stats);
+        }
+        return stats;
+    }
+
+    private void submitRebuild() {
+        if (!rebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        rebuilder.execute(() -> {
+            rebuildQueued.set(false);
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                // 例如尚未导入、源表不存在；保持未就绪，等下一次导入或手动重建
+                log.warn("Feed timeline rebuild failed, feeds are read without it: {}", e.getMessage());
+            }
+        });
+    }
+
+    // 在 *_next 表中构建，不锁正式表
+    private void build(Connection conn, Map<String, Object> stats) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS user_timeline_next, timeline_pull_authors_next");
+            stmt.execute("""
+                    CREATE TABLE user_timeline_next (
+                        UserId BIGINT NOT NULL,
+                        DatePublished TIMESTAMP,
+                        RecipeId BIGINT NOT NULL,
+                        AuthorId BIGINT NOT NULL,
+                        RecipeCategory VARCHAR(255)
+                    )""");
+            stmt.execute("CREATE TABLE timeline_pull_authors_next (AuthorId BIGINT NOT NULL)");
+            try (PreparedStatement pull = conn.prepareStatement("""
+                    INSERT INTO timeline_pull_authors_next (AuthorId)
+                    SELECT f.FollowingId
+                    FROM user_follows f
+                    JOIN users u ON u.AuthorId = f.FollowingId
+                    WHERE u.IsDeleted = FALSE
+                    GROUP BY f.FollowingId
+                    HAVING COUNT(*) > ?
+                    """)) {
+                pull.setInt(1, pullThreshold);
+                stats.put("pullAuthors", pull.executeUpdate());
+            }
+            stats.put("rows", stmt.executeUpdate(NEXT_ENTRIES_SQL));
+            // 与导入相同，索引在数据就位后一次性构建
+            stmt.execute("ALTER TABLE timeline_pull_authors_next ADD CONSTRAINT timeline_pull_authors_next_pkey PRIMARY KEY (AuthorId)");
+            stmt.execute("ALTER TABLE user_timeline_next ADD CONSTRAINT user_timeline_next_pkey PRIMARY KEY (UserId, RecipeId)");
+            stmt.execute("CREATE INDEX user_timeline_next_page_idx ON user_timeline_next (UserId, DatePublished DESC, RecipeId DESC) INCLUDE (RecipeCategory)");
+            stmt.execute("CREATE INDEX user_timeline_next_recipeid_idx ON user_timeline_next (RecipeId)");
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        // VACUUM 设置可见性映射，计数与分页才能只扫索引；它不能在事务块中执行
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("VACUUM (ANALYZE) user_timeline_next, timeline_pull_authors_next");
+        }
+    }
+
+    // 锁住源表的写入后补上构建期间的变化，再替换正式表；就绪标记在提交前设置，被挡住的写入放行后即会维护新表
+    private void swap(Connection conn, boolean catchUp, Map<String, Object> stats) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET LOCAL lock_timeout = '" + SWAP_LOCK_TIMEOUT + "'");
+            stmt.execute("LOCK TABLE user_follows, recipes, users IN SHARE MODE");
+            if (catchUp) {
+                int removed = stmt.executeUpdate("""
+                        DELETE FROM user_timeline_next t
+                        WHERE NOT EXISTS (
+                            SELECT 1
+                            FROM user_follows f
+                            JOIN recipes r ON r.AuthorId = f.FollowingId
+                            JOIN users u ON u.AuthorId = r.AuthorId
+                            WHERE f.FollowerId = t.UserId AND r.RecipeId = t.RecipeId AND u.IsDeleted = FALSE)
+                        """);
+                int added = stmt.executeUpdate(NEXT_ENTRIES_SQL + """
+                         AND NOT EXISTS (
+                            SELECT 1 FROM user_timeline_next t WHERE t.UserId = f.FollowerId AND t.RecipeId = r.RecipeId)
+                        """);
+                stats.put("caughtUp", removed + added);
+            }
+            stmt.execute("DROP TABLE IF EXISTS user_timeline, timeline_pull_authors");
+            stmt.execute("ALTER TABLE user_timeline_next RENAME TO user_timeline");
+            stmt.execute("ALTER TABLE user_timeline RENAME CONSTRAINT user_timeline_next_pkey TO user_timeline_pkey");
+            stmt.execute("ALTER INDEX user_timeline_next_page_idx RENAME TO user_timeline_page_idx");
+            stmt.execute("ALTER INDEX user_timeline_next_recipeid_idx RENAME TO user_timeline_recipeid_idx");
+            stmt.execute("ALTER TABLE timeline_pull_authors_next RENAME TO timeline_pull_authors");
+            stmt.execute("ALTER TABLE timeline_pull_authors RENAME CONSTRAINT timeline_pull_authors_next_pkey TO timeline_pull_authors_pkey");
+            ready = true;
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            ready = false;
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Current size of the timeline: {@code enabled, ready, rows, pullAuthors, pullThreshold}.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ready", ready);
+        if (enabled && ready) {
+            stats.put("rows", count("user_timeline"));
+            stats.put("pullAuthors", count("timeline_pull_authors"));
+        }
+        stats.put("pullThreshold", pullThreshold);
+        return stats;
+    }
+
+    private long count(String table) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return count != null ? count : 0;
+    }
+
+    // 写入方在写完源表之后调用：先登记、再看是否就绪；未就绪时不维护，由进行中的或下一次重建补上
+    private boolean maintain() {
+        if (!enabled) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 尚未提交的写入，重建开始时的快照看不到
+            active.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    active.decrementAndGet();
+                }
+            });
+        }
+        writes.incrementAndGet();
+        return ready;
+    }
+}
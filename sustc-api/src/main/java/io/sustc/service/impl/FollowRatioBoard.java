@@ -0,0 +1,293 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory follow ratio leaderboard behind {@link UserServiceImpl#getUserWithHighestFollowRatio()}: the active users
+ * with a non-zero following count, ordered by {@code Followers / Following} descending, then by {@code AuthorId}.
+ * <p>
+ * The board mirrors the Followers/Following counters on {@code users}, which follow, deleteAccount and the import keep
+ * equal to the counts in {@code user_follows}. Writers do not change the board themselves: {@link #changed(long...)}
+ * marks the users whose counters a transaction touched, again once it completes, and the next read reloads only those
+ * rows with one query. {@link #clear()} makes the next read reload every eligible user, e.g. after an import or a drop.
+ * Reloads read the database and build the new ranking without holding the board's monitor, which only guards the
+ * swap, so statistics and other readers are never blocked behind the query.
+ * <p>
+ * The board is only as good as the counters: they are adjusted in place by follow, followAll and deleteAccount, and
+ * recomputed from the edges by the imports. A writer that changes {@code user_follows} without them, e.g. a manual
+ * fix in SQL, leaves them wrong until {@link #reconcile()}, which the imports run afterwards to verify their result
+ * and {@code db follow-ratio --reconcile} runs on demand.
+ * Keeping the ranking here rather than in an index on the ratio leaves the counters unindexed, so the counter updates
+ * of a follow stay heap-only updates.
+ */
+@Slf4j
+@Component
+public class FollowRatioBoard {
+
+    private static final String ELIGIBLE_SQL = """
+            SELECT AuthorId, COALESCE(Followers, 0), Following
+            FROM users
+            WHERE IsDeleted = FALSE AND Following > 0
+            """;
+
+    // 榜上用户的名字与比值只在返回时读取；比值表达式与原先 getUserWithHighestFollowRatio 一致（numeric 除法），返回值逐位相同
+    private static final String RESULT_SQL = """
+            SELECT AuthorId, AuthorName, COALESCE(Followers, 0) * 1.0 / Following AS Ratio
+            FROM users
+            WHERE AuthorId = ANY(?) AND Following > 0
+            """;
+
+    // 比较 a.followers/a.following 与 b.followers/b.following：交叉相乘精确比较；计数均为 int，乘积不会溢出
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int c = Long.compare(b.followers * a.following, a.followers * b.following);
+        return c != 0 ? c : Long.compare(a.authorId, b.authorId);
+    };
+
+    // 计数与关注边不一致的用户，按关注边重算；锁住 user_follows 的写入，避免与并发关注的增减交错
+    private static final String RECONCILE_SQL = """
+            UPDATE users u
+            SET Followers = c.Followers, Following = c.Following
+            FROM (
+                SELECT u.AuthorId, COALESCE(fr.Count, 0) AS Followers, COALESCE(fg.Count, 0) AS Following
+                FROM users u
+                LEFT JOIN (SELECT FollowingId AS AuthorId, COUNT(*) AS Count FROM user_follows GROUP BY FollowingId) fr
+                    ON fr.AuthorId = u.AuthorId
+                LEFT JOIN (SELECT FollowerId AS AuthorId, COUNT(*) AS Count FROM user_follows GROUP BY FollowerId) fg
+                    ON fg.AuthorId = u.AuthorId
+            ) c
+            WHERE u.AuthorId = c.AuthorId
+              AND (COALESCE(u.Followers, 0) <> c.Followers OR COALESCE(u.Following, 0) <> c.Following)
+            RETURNING u.AuthorId
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 只在持有本对象监视器时读写；整体重载在锁外建好新集合后一并替换
+    private TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+
+    private HashMap<Long, Entry> entries = new HashMap<>();
+
+    // 串行化刷新：同一用户的两次重新读取不能乱序应用；持有它时可以查询数据库，但读者只在替换时等待监视器
+    private final Object refreshLock = new Object();
+
+    // 计数变化、尚未重新读取的用户；标记不需要等待正在进行的刷新
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+
+    private final AtomicLong fullReloads = new AtomicLong();
+
+    private final AtomicLong partialRefreshes = new AtomicLong();
+
+    private final AtomicLong refreshedRows = new AtomicLong();
+
+    private static final class Entry {
+
+        final long authorId;
+
+        final long followers;
+
+        final long following;
+
+        Entry(ResultSet rs) throws SQLException {
+            this.authorId = rs.getLong(1);
+            this.followers = rs.getLong(2);
+            this.following = rs.getLong(3);
+        }
+    }
+
+    /**
+     * The first {@code limit} users of the board as {@code AuthorId, AuthorName, Ratio} maps, after applying every
+     * change marked so far. Names and ratios of just these users are read with one primary key query.
+     */
+    public List<Map<String, Object>> top(int limit) {
+        long[] ids;
+        synchronized (refreshLock) {
+            refresh();
+        }
+        synchronized (this) {
+            ids = new long[Math.max(Math.min(limit, ranking.size()), 0)];
+            Iterator<Entry> it = ranking.iterator();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = it.next().authorId;
+            }
+        }
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Map<Long, Map<String, Object>> found = new HashMap<>();
+        jdbcTemplate.query(RESULT_SQL, rs -> {
+            Map<String, Object> user = new HashMap<>();
+            user.put("AuthorId", rs.getLong("AuthorId"));
+            user.put("AuthorName", rs.getString("AuthorName"));
+            user.put("Ratio", rs.getBigDecimal("Ratio").doubleValue());
+            found.put(rs.getLong("AuthorId"), user);
+        }, (Object) ids);
+        List<Map<String, Object>> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            // 刷新之后才提交的取消关注可能已使其不再满足条件
+            Map<String, Object> user = found.get(id);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Marks users whose Followers/Following counters (or deleted flag) changed, now and, inside a transaction,
+     * once more after it completes, since until then a refresh still reads the old counters.
+     */
+    public void changed(long... authorIds) {
+        mark(authorIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    mark(authorIds);
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes the next read reload the whole board, e.g. after an import or a drop; like {@link #changed(long...)} it
+     * repeats after the surrounding transaction completes.
+     */
+    public void clear() {
+        stale.set(true);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    stale.set(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Recomputes the Followers/Following counters of every user whose counters disagree with {@code user_follows},
+     * holding off concurrent follows while it runs, and marks them changed. Joins the caller's transaction, if any.
+     *
+     * @return the ids of the users that were repaired, normally none
+     */
+    @Transactional
+    public List<Long> reconcile() {
+        jdbcTemplate.execute("LOCK TABLE user_follows IN SHARE MODE");
+        List<Long> repaired = jdbcTemplate.queryForList(RECONCILE_SQL, Long.class);
+        if (!repaired.isEmpty()) {
+            log.warn("Repaired the follow counters of {} users, e.g. {}", repaired.size(),
+                    repaired.subList(0, Math.min(repaired.size(), 10)));
+            changed(repaired.stream().mapToLong(Long::longValue).toArray());
+        }
+        return repaired;
+    }
+
+    /**
+     * Counters since startup: {@code entries, pending, fullReloads, partialRefreshes, refreshedRows}.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("pending", dirty.size());
+        stats.put("fullReloads", fullReloads.get());
+        stats.put("partialRefreshes", partialRefreshes.get());
+        stats.put("refreshedRows", refreshedRows.get());
+        return stats;
+    }
+
+    private void mark(long[] authorIds) {
+        for (long authorId : authorIds) {
+            dirty.add(authorId);
+        }
+    }
+
+    // 先取走标记再查询：查询开始之后提交的变化会重新标记，留给下一次读取；调用方持有 refreshLock
+    private void refresh() {
+        if (stale.getAndSet(false)) {
+            dirty.clear();
+            long start = System.currentTimeMillis();
+            TreeSet<Entry> newRanking = new TreeSet<>(ORDER);
+            HashMap<Long, Entry> newEntries = new HashMap<>();
+            try {
+                jdbcTemplate.query(ELIGIBLE_SQL, rs -> {
+                    Entry entry = new Entry(rs);
+                    newEntries.put(entry.authorId, entry);
+                    newRanking.add(entry);
+                });
+            } catch (RuntimeException e) {
+                // 未加载完整，下次读取重新加载
+                stale.set(true);
+                throw e;
+            }
+            synchronized (this) {
+                ranking = newRanking;
+                entries = newEntries;
+            }
+            fullReloads.incrementAndGet();
+            log.debug("Loaded {} users into the follow ratio board in {} ms", newEntries.size(), System.currentTimeMillis() - start);
+            return;
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+            ids.add(it.next());
+            it.remove();
+        }
+        // 不再满足条件（已删除或不再关注任何人）的用户不会返回，即从榜上移除
+        List<Entry> loaded = new ArrayList<>();
+        try {
+            jdbcTemplate.query(ELIGIBLE_SQL + " AND AuthorId = ANY(?)", rs -> {
+                loaded.add(new Entry(rs));
+            }, (Object) ids.stream().mapToLong(Long::longValue).toArray());
+        } catch (RuntimeException e) {
+            dirty.addAll(ids);
+            throw e;
+        }
+        synchronized (this) {
+            for (Long id : ids) {
+                Entry old = entries.remove(id);
+                if (old != null) {
+                    ranking.remove(old);
+                }
+            }
+            for (Entry entry : loaded) {
+                put(entry);
+            }
+        }
+        partialRefreshes.incrementAndGet();
+        refreshedRows.addAndGet(ids.size());
+    }
+
+    private void put(Entry entry) {
+        entries.put(entry.authorId, entry);
+        ranking.add(entry);
+    }
+}
@@ -0,0 +1,45 @@
+package io.sustc.service.impl;
+
+/**
+ * Hands out primary keys for rows the services insert (users, recipes, reviews).
+ * <p>
+ * The implementation is chosen with {@code sustc.id.allocator}: {@code sequence} (the default,
+ * {@link SequenceIdAllocator}) or {@code max} ({@link MaxIdAllocator}, the old {@code MAX(id) + 1}).
+ */
+public interface IdAllocator {
+
+    /**
+     * The tables whose ids are allocated, with their id column.
+     */
+    enum Key {
+        USER("users", "AuthorId"),
+        RECIPE("recipes", "RecipeId"),
+        REVIEW("reviews", "ReviewId");
+
+        final String table;
+
+        final String column;
+
+        Key(String table, String column) {
+            this.table = table;
+            this.column = column;
+        }
+    }
+
+    /**
+     * Returns an id that no committed row and no other caller holds. Inside a transaction the id is released
+     * automatically if the transaction rolls back; outside one, a caller whose insert fails calls {@link #release}.
+     */
+    long allocate(Key key);
+
+    /**
+     * Gives back an id whose row was not inserted, so that it is handed out again. Releasing twice is harmless.
+     */
+    void release(Key key, long id);
+
+    /**
+     * Forgets every id held in memory, e.g. after the tables were dropped, reimported or changed in bulk;
+     * the next allocation continues after the largest id in the table.
+     */
+    void reset();
+}
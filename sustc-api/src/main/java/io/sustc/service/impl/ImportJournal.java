@@ -0,0 +1,124 @@
+package io.sustc.service.impl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Progress journal of an import, kept in the {@value #TABLE} table next to the staging tables.
+ * <p>
+ * Every step has one row: a table step records how many source records have been committed
+ * into that table, other steps (e.g. building constraints) only record whether they are done.
+ * Load batches update their row in the same transaction as the rows they copy, so the journal never
+ * claims more than the staging tables hold. The journal is dropped together with the swap into place.
+ */
+public class ImportJournal {
+
+    public static final String TABLE = "import_journal";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 当前导入各步骤的进度快照：步骤名 -> {已提交的源记录数, 是否完成}
+    private final Map<String, long[]> steps = new ConcurrentHashMap<>();
+
+    public ImportJournal(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Loads the existing journal if it was written for the same input and all staging tables survived.
+     *
+     * @param fingerprint identifies the input; {@code null} means the input cannot be recognized again
+     * @return whether the previous import can be resumed
+     */
+    public boolean resume(String fingerprint, List<String> stagingTables) {
+        if (fingerprint == null || !exists(TABLE)) {
+            return false;
+        }
+        for (String table : stagingTables) {
+            if (!exists(table)) {
+                return false;
+            }
+        }
+        steps.clear();
+        boolean[] sameInput = {true};
+        jdbcTemplate.query("SELECT Step, Fingerprint, CommittedRecords, Done FROM " + TABLE, rs -> {
+            sameInput[0] &= Objects.equals(fingerprint, rs.getString("Fingerprint"));
+            steps.put(rs.getString("Step"), new long[]{rs.getLong("CommittedRecords"), rs.getBoolean("Done") ? 1 : 0});
+        });
+        return sameInput[0] && !steps.isEmpty();
+    }
+
+    /**
+     * Starts an empty journal for a fresh import, replacing any previous one.
+     *
+     * @param unlogged create the journal {@code UNLOGGED}, to be emptied by crash recovery together with
+     *                 unlogged staging tables
+     */
+    public void start(String fingerprint, List<String> stepNames, boolean unlogged) {
+        discard();
+        jdbcTemplate.execute("CREATE " + (unlogged ? "UNLOGGED " : "") + "TABLE " + TABLE + " (" +
+                "    Step VARCHAR(64) PRIMARY KEY, " +
+                "    Fingerprint TEXT, " +
+                "    CommittedRecords BIGINT NOT NULL DEFAULT 0, " +
+                "    Done BOOLEAN NOT NULL DEFAULT FALSE" +
+                ")");
+        steps.clear();
+        for (String step : stepNames) {
+            jdbcTemplate.update("INSERT INTO " + TABLE + " (Step, Fingerprint) VALUES (?, ?)", step, fingerprint);
+            steps.put(step, new long[]{0, 0});
+        }
+    }
+
+    public void discard() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+    }
+
+    public long committedRecords(String step) {
+        long[] state = steps.get(step);
+        return state == null ? 0 : state[0];
+    }
+
+    public boolean isDone(String step) {
+        long[] state = steps.get(step);
+        return state != null && state[1] == 1;
+    }
+
+    /**
+     * Runs a non-table step unless the journal already marks it done, and marks it done afterwards.
+     */
+    public void runStep(String step, Runnable action) {
+        if (isDone(step)) {
+            return;
+        }
+        action.run();
+        jdbcTemplate.update("UPDATE " + TABLE + " SET Done = TRUE WHERE Step = ?", step);
+        steps.put(step, new long[]{committedRecords(step), 1});
+    }
+
+    /**
+     * Records a committed batch of a table step on the connection that loaded it;
+     * the caller commits both together.
+     */
+    public void checkpoint(Connection conn, String step, long committedRecords, boolean done) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE " + TABLE + " SET CommittedRecords = ?, Done = ? WHERE Step = ?")) {
+            stmt.setLong(1, committedRecords);
+            stmt.setBoolean(2, done);
+            stmt.setString(3, step);
+            stmt.executeUpdate();
+        }
+        steps.put(step, new long[]{committedRecords, done ? 1 : 0});
+    }
+
+    private boolean exists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+}
@@ -0,0 +1,158 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.CursorPage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque cursor for keyset (seek) pagination: a tag naming the API and sort mode it was issued for, plus the sort key
+ * and id of the last row returned. Tags are built with {@link #tag(String, String)}, so a cursor from one listing is
+ * rejected by every other one, even when both sort by {@code date_desc}.
+ * <p>
+ * The next page starts right after that row, so the query can seek into an index on {@code (key, id)} instead of
+ * skipping {@code OFFSET} rows. All supported orders end with {@code id DESC} as the tie breaker, and follow
+ * PostgreSQL's default NULL placement: {@code DESC} puts NULL keys first, {@code ASC} puts them last.
+ */
+final class KeysetCursor {
+
+    private final String tag;
+
+    // 最后一行的排序键：Timestamp 列记为 LocalDateTime，DECIMAL 列记为 BigDecimal，可能为 null
+    private final Object key;
+
+    private final long id;
+
+    private KeysetCursor(String tag, Object key, long id) {
+        this.tag = tag;
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * The tag of the cursors of one listing, e.g. {@code tag("feed", "date_desc")}.
+     */
+    static String tag(String api, String sort) {
+        return api + ":" + sort;
+    }
+
+    /**
+     * Parses a cursor returned by an earlier page of the same query.
+     *
+     * @return {@code null} for a {@code null} cursor, i.e. the first page
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for another listing or sort order
+     */
+    static KeysetCursor decode(String cursor, String tag) {
+        if (cursor == null) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (parts.length != 3 || !parts[0].equals(tag) || parts[1].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor for " + tag);
+        }
+        try {
+            Object key;
+            switch (parts[1].charAt(0)) {
+                case 'T':
+                    key = LocalDateTime.parse(parts[1].substring(1));
+                    break;
+                case 'N':
+                    key = new BigDecimal(parts[1].substring(1));
+                    break;
+                case '-':
+                    key = null;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid cursor key");
+            }
+            return new KeysetCursor(tag, key, Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    static String encode(String tag, Object key, long id) {
+        String encodedKey;
+        if (key == null) {
+            encodedKey = "-";
+        } else if (key instanceof Timestamp) {
+            encodedKey = "T" + ((Timestamp) key).toLocalDateTime();
+        } else if (key instanceof BigDecimal) {
+            encodedKey = "N" + ((BigDecimal) key).toPlainString();
+        } else {
+            throw new IllegalArgumentException("Unsupported cursor key type " + key.getClass());
+        }
+        String raw = tag + "|" + encodedKey + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends {@code AND <rows after this cursor>} for {@code ORDER BY keyColumn DESC|ASC, idColumn DESC}.
+     */
+    void appendSeek(StringBuilder sql, List<Object> params, String keyColumn, boolean descending, String idColumn) {
+        if (descending) {
+            if (key != null) {
+                // NULL 键排在最前面，已经在之前的页中返回；行比较可以直接在 (key, id) 索引上定位
+                sql.append(" AND (").append(keyColumn).append(", ").append(idColumn).append(") < (?, ?)");
+                params.add(key);
+                params.add(id);
+            } else {
+                sql.append(" AND ((").append(keyColumn).append(" IS NULL AND ").append(idColumn).append(" < ?) OR ")
+                        .append(keyColumn).append(" IS NOT NULL)");
+                params.add(id);
+            }
+        } else {
+            if (key != null) {
+                // 升序时 NULL 键排在最后，始终位于游标之后
+                sql.append(" AND (").append(keyColumn).append(" > ? OR (").append(keyColumn).append(" = ? AND ")
+                        .append(idColumn).append(" < ?) OR ").append(keyColumn).append(" IS NULL)");
+                params.add(key);
+                params.add(key);
+                params.add(id);
+            } else {
+                sql.append(" AND ").append(keyColumn).append(" IS NULL AND ").append(idColumn).append(" < ?");
+                params.add(id);
+            }
+        }
+    }
+
+    /**
+     * Runs a page query whose last parameter is the limit {@code size + 1}: the extra row only tells whether
+     * another page exists, and the cursor is taken from the last row that is returned.
+     *
+     * @param keyColumn result column holding the sort key, {@code idColumn} the tie-breaking id
+     */
+    static <T> CursorPage<T> fetch(JdbcTemplate jdbcTemplate, String sql, List<Object> params, int size, String tag,
+                                   String keyColumn, String idColumn, RowMapper<T> rowMapper) {
+        List<T> items = new ArrayList<>();
+        Object[] lastKey = new Object[1];
+        long[] lastId = new long[1];
+        boolean[] hasMore = new boolean[1];
+        jdbcTemplate.query(sql, rs -> {
+            if (items.size() == size) {
+                hasMore[0] = true;
+                return;
+            }
+            items.add(rowMapper.mapRow(rs, items.size()));
+            lastKey[0] = rs.getObject(keyColumn);
+            lastId[0] = rs.getLong(idColumn);
+        }, params.toArray());
+        return CursorPage.<T>builder()
+                .items(items)
+                .size(size)
+                .nextCursor(hasMore[0] ? encode(tag, lastKey[0], lastId[0]) : null)
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package io.sustc.service.impl;
+
+/**
+ * An open-addressing hash set of primitive {@code long} values (linear probing, power-of-two table).
+ * <p>
+ * Used during import to deduplicate relation pairs without boxing or building string keys;
+ * {@link #pack(long, long)} combines two non-negative 32-bit ids into one key.
+ * Not thread-safe.
+ */
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // 最大的 2 的幂数组长度；再翻倍会溢出 int
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+
+    // 0 作为空槽标记，值 0 本身单独记录
+    private boolean containsZero;
+
+    private int size;
+
+    private int mask;
+
+    private int resizeAt;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of keys to size the table for; sizes beyond the maximum table are clamped
+     */
+    public LongHashSet(int expectedSize) {
+        long wanted = Math.min(Math.max(4, (long) Math.ceil(expectedSize / LOAD_FACTOR)), MAX_CAPACITY);
+        allocate(Integer.highestOneBit((int) wanted - 1) << 1);
+    }
+
+    /**
+     * Whether {@code id} can take part in {@link #pack(long, long)} without colliding with another pair.
+     */
+    public static boolean packable(long id) {
+        return id >= 0 && id <= 0xFFFFFFFFL;
+    }
+
+    /**
+     * Packs two {@link #packable(long) packable} ids into one key, {@code high} in the upper 32 bits.
+     */
+    public static long pack(long high, long low) {
+        return (high << 32) | low;
+    }
+
+    /**
+     * Adds {@code key} to the set.
+     *
+     * @return {@code true} if the key was not present before
+     * @throws IllegalStateException if the key is new and the table is already at its maximum size
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 >= resizeAt && keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("LongHashSet cannot grow beyond " + MAX_CAPACITY
+                    + " slots; it already holds " + size + " keys");
+        }
+        keys[slot] = key;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long key : old) {
+            if (key != 0) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    // murmur3 fmix64，打散打包后高低位的规律性
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53a8ec5L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
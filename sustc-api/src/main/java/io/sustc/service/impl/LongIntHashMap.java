@@ -0,0 +1,149 @@
+package io.sustc.service.impl;
+
+/**
+ * An open-addressing hash map from primitive {@code long} keys to {@code int} counters
+ * (linear probing, power-of-two table), the counting counterpart of {@link LongHashSet}.
+ * Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // 最大的 2 的幂数组长度；再翻倍会溢出 int
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private long[] keys;
+
+    private int[] values;
+
+    // 0 作为空槽标记，键 0 的值单独记录
+    private boolean containsZero;
+
+    private int zeroValue;
+
+    private int size;
+
+    private int mask;
+
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of keys to size the table for; sizes beyond the maximum table are clamped
+     */
+    public LongIntHashMap(int expectedSize) {
+        long wanted = Math.min(Math.max(4, (long) Math.ceil(expectedSize / LOAD_FACTOR)), MAX_CAPACITY);
+        allocate(Integer.highestOneBit((int) wanted - 1) << 1);
+    }
+
+    /**
+     * Adds one to the value of {@code key}, starting from zero for a new key.
+     *
+     * @throws IllegalStateException if the key is new and the table is already at its maximum size
+     */
+    public void increment(long key) {
+        if (key == 0) {
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            zeroValue++;
+            return;
+        }
+        int slot = LongHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 >= resizeAt && keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("LongIntHashMap cannot grow beyond " + MAX_CAPACITY
+                    + " slots; it already holds " + size + " keys");
+        }
+        keys[slot] = key;
+        values[slot] = 1;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * @return the value of {@code key}, or 0 if absent
+     */
+    public int get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int slot = LongHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = LongHashSet.mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if (containsZero) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = LongHashSet.mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Allocates {@code MAX(id) + 1}, reading the table on every call. Only safe with a single writer per table:
+ * concurrent callers can get the same id, and the second insert then fails. Kept for databases where
+ * sequences cannot be created; select it with {@code sustc.id.allocator=max}.
+ */
+@Component
+@ConditionalOnProperty(name = "sustc.id.allocator", havingValue = "max")
+public class MaxIdAllocator implements IdAllocator {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public long allocate(Key key) {
+        Long maxId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(" + key.column + "), 0) FROM " + key.table, Long.class);
+        return (maxId == null ? 0 : maxId) + 1;
+    }
+
+    @Override
+    public void release(Key key, long id) {
+        // 未插入的 id 下次自然会再被分配
+    }
+
+    @Override
+    public void reset() {
+    }
+}
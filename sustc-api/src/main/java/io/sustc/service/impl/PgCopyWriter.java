@@ -0,0 +1,167 @@
+package io.sustc.service.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Streams rows into a table through {@code COPY ... FROM STDIN} (text format).
+ * <p>
+ * Values are written field by field, so callers never build an {@code Object[]} per row.
+ * Nothing is visible to other sessions until the surrounding transaction commits.
+ */
+public class PgCopyWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final MathContext FLOAT4_DIGITS = new MathContext(6, RoundingMode.HALF_EVEN);
+
+    private final PGCopyOutputStream copyStream;
+
+    private final Writer out;
+
+    private boolean firstField = true;
+
+    private long rows;
+
+    public PgCopyWriter(Connection conn, String table, String columns) throws SQLException {
+        String sql = "COPY " + table + " (" + columns + ") FROM STDIN";
+        this.copyStream = new PGCopyOutputStream(conn.unwrap(PGConnection.class), sql, BUFFER_SIZE);
+        this.out = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public PgCopyWriter field(long value) {
+        separator();
+        write(Long.toString(value));
+        return this;
+    }
+
+    public PgCopyWriter field(int value) {
+        separator();
+        write(Integer.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a float the way the server casts a bound {@code float4} into a {@code DECIMAL} column,
+     * i.e. rounded to {@code FLT_DIG} (6) significant digits, so COPY stores exactly what
+     * {@code PreparedStatement#setFloat} used to store. Trailing zeros are dropped as the server does,
+     * so an unconstrained {@code DECIMAL} column gets the same scale too.
+     */
+    public PgCopyWriter field(float value) {
+        separator();
+        if (value == 0f || Float.isNaN(value) || Float.isInfinite(value)) {
+            write(value == 0f ? "0" : Float.toString(value));
+        } else {
+            write(new BigDecimal(value).round(FLOAT4_DIGITS).stripTrailingZeros().toPlainString());
+        }
+        return this;
+    }
+
+    public PgCopyWriter field(boolean value) {
+        separator();
+        write(value ? "t" : "f");
+        return this;
+    }
+
+    public PgCopyWriter field(Timestamp value) {
+        separator();
+        write(value == null ? "\\N" : value.toString());
+        return this;
+    }
+
+    public PgCopyWriter field(String value) {
+        separator();
+        if (value == null) {
+            write("\\N");
+            return this;
+        }
+        try {
+            // text 格式下需要转义反斜杠与分隔/换行字符
+            for (int i = 0, n = value.length(); i < n; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    default:
+                        out.write(c);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public void endRow() {
+        write("\n");
+        firstField = true;
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Flushes the remaining rows and ends the COPY, returning the number of rows the server accepted.
+     */
+    public long finish() throws SQLException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new SQLException("Failed to flush COPY stream", e);
+        }
+        return copyStream.endCopy();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (copyStream.isActive()) {
+            // 未正常 finish（出现异常），取消本次 COPY，交由外层事务回滚
+            try {
+                copyStream.cancelCopy();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private void separator() {
+        if (!firstField) {
+            write("\t");
+        }
+        firstField = false;
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
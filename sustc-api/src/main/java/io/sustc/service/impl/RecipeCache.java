@@ -0,0 +1,286 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.RecipeRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Read-through cache of fully assembled {@link RecipeRecord}s, keyed by recipe id.
+ * <p>
+ * The cache is bounded by the estimated heap footprint of its entries rather than by their number, since a recipe
+ * with a long description or many ingredients is many times larger than a short one. Entries are evicted in
+ * least-recently-used order once the budget ({@code sustc.recipe-cache.max-bytes}, 0 disables the cache) is exceeded.
+ * <p>
+ * Every write that changes what {@code getRecipeById} would return must call {@link #invalidate(long)} (or
+ * {@link #clear()} for bulk changes). Inside a transaction the entry is dropped again after completion, because until
+ * the commit other readers still see, and may re-cache, the old row. A load that overlaps any invalidation is not
+ * stored at all, so a stale record never outlives the write that made it stale.
+ * <p>
+ * Records are copied on the way in and out: callers may modify what they get without affecting the cache.
+ */
+@Component
+public class RecipeCache {
+
+    // 对象头、引用字段与 24 个基本类型字段的粗略开销
+    private static final long RECORD_OVERHEAD = 224;
+
+    // 每个字符串：对象头 + byte[] 头
+    private static final long STRING_OVERHEAD = 56;
+
+    // LinkedHashMap 条目、Long 键及 Entry 包装
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long weight;
+
+    // 每次失效递增；加载期间若发生过失效，加载结果不入缓存
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry {
+
+        final RecipeRecord record;
+
+        final long weight;
+
+        Entry(RecipeRecord record, long weight) {
+            this.record = record;
+            this.weight = weight;
+        }
+    }
+
+    public RecipeCache(@Value("${sustc.recipe-cache.max-bytes:67108864}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached record for {@code recipeId}, or loads it with {@code loader} and caches it.
+     * A {@code null} result (no such recipe) is returned but not cached.
+     */
+    public RecipeRecord get(long recipeId, LongFunction<RecipeRecord> loader) {
+        if (maxBytes <= 0) {
+            return loader.apply(recipeId);
+        }
+        synchronized (this) {
+            Entry entry = entries.get(recipeId);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return copy(entry.record);
+            }
+        }
+        misses.incrementAndGet();
+        long stamp = invalidations.get();
+        RecipeRecord loaded = loader.apply(recipeId);
+        if (loaded != null) {
+            put(recipeId, copy(loaded), stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * Bulk variant of {@link #get}: returns the records of {@code recipeIds} in the same order ({@code null} where a
+     * recipe does not exist), loading all misses with one call of {@code loader}, which returns the records it found.
+     */
+    public List<RecipeRecord> getAll(long[] recipeIds, Function<long[], Collection<RecipeRecord>> loader) {
+        RecipeRecord[] result = new RecipeRecord[recipeIds.length];
+        long[] missing = new long[recipeIds.length];
+        int missCount = 0;
+        if (maxBytes > 0) {
+            synchronized (this) {
+                for (int i = 0; i < recipeIds.length; i++) {
+                    Entry entry = entries.get(recipeIds[i]);
+                    if (entry != null) {
+                        result[i] = copy(entry.record);
+                    } else {
+                        missing[missCount++] = recipeIds[i];
+                    }
+                }
+            }
+        } else {
+            missing = recipeIds.clone();
+            missCount = missing.length;
+        }
+        hits.addAndGet(recipeIds.length - missCount);
+        misses.addAndGet(missCount);
+        if (missCount == 0) {
+            return Arrays.asList(result);
+        }
+
+        long stamp = invalidations.get();
+        Map<Long, RecipeRecord> loaded = new HashMap<>();
+        for (RecipeRecord record : loader.apply(Arrays.copyOf(missing, missCount))) {
+            loaded.put(record.getRecipeId(), record);
+        }
+        for (int i = 0; i < recipeIds.length; i++) {
+            if (result[i] == null) {
+                RecipeRecord record = loaded.get(recipeIds[i]);
+                // 同一 id 重复出现时，每个位置各得一份副本
+                result[i] = record == null ? null : copy(record);
+            }
+        }
+        if (maxBytes > 0) {
+            for (RecipeRecord record : loaded.values()) {
+                put(record.getRecipeId(), copy(record), stamp);
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Drops the cached record of one recipe, now and, inside a transaction, once more after it completes.
+     */
+    public void invalidate(long recipeId) {
+        remove(recipeId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(recipeId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops every cached record, e.g. after an import or a drop; like {@link #invalidate(long)} it repeats
+     * after the surrounding transaction completes.
+     */
+    public void clear() {
+        removeAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    removeAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * Hit/miss counters and occupancy since startup:
+     * {@code hits, misses, hitRate, evictions, entries, bytes, maxBytes}.
+     */
+    public Map<String, Object> getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", weight);
+        }
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    private synchronized void put(long recipeId, RecipeRecord record, long stamp) {
+        if (invalidations.get() != stamp) {
+            return;
+        }
+        long w = weigh(record);
+        if (w > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(recipeId, new Entry(record, w));
+        weight += w - (previous == null ? 0 : previous.weight);
+        // 访问顺序的 LinkedHashMap：迭代从最久未使用的条目开始
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized void remove(long recipeId) {
+        invalidations.incrementAndGet();
+        Entry removed = entries.remove(recipeId);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    private synchronized void removeAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+        weight = 0;
+    }
+
+    // 估算记录占用的堆内存（字符串按 Latin-1 紧凑存储计，每字符 1 字节）
+    private static long weigh(RecipeRecord r) {
+        long w = ENTRY_OVERHEAD + RECORD_OVERHEAD
+                + weigh(r.getName()) + weigh(r.getAuthorName()) + weigh(r.getCookTime())
+                + weigh(r.getPrepTime()) + weigh(r.getTotalTime()) + weigh(r.getDescription())
+                + weigh(r.getRecipeCategory()) + weigh(r.getRecipeYield());
+        if (r.getDatePublished() != null) {
+            w += 32;
+        }
+        String[] parts = r.getRecipeIngredientParts();
+        if (parts != null) {
+            w += 16 + 4L * parts.length;
+            for (String part : parts) {
+                w += weigh(part);
+            }
+        }
+        return w;
+    }
+
+    private static long weigh(String s) {
+        return s == null ? 0 : STRING_OVERHEAD + s.length();
+    }
+
+    private static RecipeRecord copy(RecipeRecord r) {
+        return RecipeRecord.builder()
+                .RecipeId(r.getRecipeId())
+                .name(r.getName())
+                .authorId(r.getAuthorId())
+                .authorName(r.getAuthorName())
+                .cookTime(r.getCookTime())
+                .prepTime(r.getPrepTime())
+                .totalTime(r.getTotalTime())
+                .datePublished(r.getDatePublished() == null ? null : (Timestamp) r.getDatePublished().clone())
+                .description(r.getDescription())
+                .recipeCategory(r.getRecipeCategory())
+                .recipeIngredientParts(r.getRecipeIngredientParts() == null ? null : r.getRecipeIngredientParts().clone())
+                .aggregatedRating(r.getAggregatedRating())
+                .reviewCount(r.getReviewCount())
+                .calories(r.getCalories())
+                .fatContent(r.getFatContent())
+                .saturatedFatContent(r.getSaturatedFatContent())
+                .cholesterolContent(r.getCholesterolContent())
+                .sodiumContent(r.getSodiumContent())
+                .carbohydrateContent(r.getCarbohydrateContent())
+                .fiberContent(r.getFiberContent())
+                .sugarContent(r.getSugarContent())
+                .proteinContent(r.getProteinContent())
+                .recipeServings(r.getRecipeServings())
+                .recipeYield(r.getRecipeYield())
+                .build();
+    }
+}
@@ -1,6 +1,7 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.service.RecipeService;
@@ -14,6 +15,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.sql.Array;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
@@ -30,6 +33,15 @@ public class RecipeServiceImpl implements RecipeService {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private FeedTimeline feedTimeline;
+
     // RowMapper for RecipeRecord
     private final RowMapper<RecipeRecord> recipeRowMapper = (rs, rowNum) -> {
         RecipeRecord record = new RecipeRecord();
@@ -47,17 +59,8 @@ public class RecipeServiceImpl implements RecipeService {
         record.setDescription(rs.getString("description"));
         record.setRecipeCategory(rs.getString("recipeCategory"));
 
-        // Get ingredients as array
-        String ingredientStr = rs.getString("ingredientParts");
-        if (ingredientStr != null && !ingredientStr.isEmpty()) {
-            String[] parts = Arrays.stream(ingredientStr.split(">"))
-                    .map(String::trim)
-                    .filter(s -> !s.isEmpty())
-                    .toArray(String[]::new);
-            record.setRecipeIngredientParts(parts);
-        } else {
-            record.setRecipeIngredientParts(new String[0]);
-        }
+        // ARRAY_AGG 直接以 text[] 传回，无需拼接再拆分
+        record.setRecipeIngredientParts(toIngredientParts(rs.getArray("ingredientParts")));
 
         record.setAggregatedRating(rs.getFloat("aggregatedRating"));
         record.setReviewCount(rs.getInt("reviewCount"));
@@ -76,6 +79,31 @@ public class RecipeServiceImpl implements RecipeService {
         return record;
     };
 
+    /**
+     * Converts an {@code ARRAY_AGG} of ingredient parts into {@link RecipeRecord#getRecipeIngredientParts()}:
+     * {@code NULL} (no ingredients) becomes an empty array, and parts are trimmed with blank ones dropped.
+     * Stored parts are already trimmed and non-blank, so the driver's array is normally returned as is.
+     */
+    public static String[] toIngredientParts(Array array) throws SQLException {
+        if (array == null) {
+            return new String[0];
+        }
+        String[] parts;
+        try {
+            parts = (String[]) array.getArray();
+        } finally {
+            array.free();
+        }
+        int kept = 0;
+        for (String raw : parts) {
+            String part = raw == null ? "" : raw.trim();
+            if (!part.isEmpty()) {
+                parts[kept++] = part;
+            }
+        }
+        return kept == parts.length ? parts : Arrays.copyOf(parts, kept);
+    }
+
     @Override
     public String getNameFromID(long id) {
         if (id <= 0) {
@@ -95,12 +123,23 @@ public class RecipeServiceImpl implements RecipeService {
         if (recipeId <= 0) {
             throw new IllegalArgumentException("recipeId must be positive");
         }
+        return recipeCache.get(recipeId, this::loadRecipe);
+    }
+
+    /**
+     * Hit/miss statistics of the {@link RecipeCache} behind {@link #getRecipeById}.
+     */
+    public Map<String, Object> getCacheStats() {
+        return recipeCache.getStats();
+    }
 
+    private RecipeRecord loadRecipe(long recipeId) {
         try {
             // 获取食谱基本信息
             String sql = """
                     SELECT r.*, u.authorName,
-                           STRING_AGG(ri.IngredientPart, '>' ORDER BY LOWER(ri.IngredientPart)) as ingredientParts
+                           ARRAY_AGG(ri.IngredientPart ORDER BY LOWER(ri.IngredientPart))
+                                    FILTER (WHERE ri.IngredientPart IS NOT NULL) as ingredientParts
                     FROM recipes r
                     LEFT JOIN users u ON r.authorId = u.authorId
                     LEFT JOIN recipe_ingredients ri ON r.RecipeId = ri.RecipeId
@@ -122,99 +161,163 @@ public class RecipeServiceImpl implements RecipeService {
             throw new IllegalArgumentException("Invalid page or size parameters");
         }
 
-        // 构建基础查询
-        StringBuilder sql = new StringBuilder("""
-                SELECT r.*, u.authorName,
-                       STRING_AGG(ri.IngredientPart, '>' ORDER BY LOWER(ri.IngredientPart)) as ingredientParts
-                FROM recipes r
-                LEFT JOIN users u ON r.authorId = u.authorId
-                LEFT JOIN recipe_ingredients ri ON r.RecipeId = ri.recipeId
-                WHERE 1=1
-                """);
+        // 先只在 recipes 上过滤、排序、分页，得到本页的 RecipeId，总数由窗口函数在同一次扫描中得到；
+        // 作者名与食材只为本页（至多 size 行）拼接，整个分页查询只需一次往返
+        StringBuilder filter = new StringBuilder(" WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        appendSearchFilter(filter, params, keyword, category, minRating);
+
+        // 排序键在分页子查询和外层查询中相同，RecipeId 作为最后的排序键保证顺序确定
+        String orderBy;
+        switch (sort == null ? "" : sort) {
+            case "rating_desc":
+                orderBy = " ORDER BY r.aggregatedRating DESC, r.RecipeId DESC";
+                break;
+            case "calories_asc":
+                orderBy = " ORDER BY r.calories ASC NULLS LAST, r.RecipeId DESC";
+                break;
+            default:
+                // 默认按发布日期降序
+                orderBy = " ORDER BY r.datePublished DESC, r.RecipeId DESC";
+        }
+
+        String sql = "WITH page AS (" +
+                "    SELECT r.RecipeId, COUNT(*) OVER () AS totalCount" +
+                "    FROM recipes r" + filter + orderBy +
+                "    LIMIT ? OFFSET ?" +
+                ") " +
+                "SELECT r.*, u.authorName, p.totalCount, " +
+                "       ARRAY_AGG(ri.IngredientPart ORDER BY LOWER(ri.IngredientPart)) " +
+                "           FILTER (WHERE ri.IngredientPart IS NOT NULL) as ingredientParts " +
+                "FROM page p " +
+                "JOIN recipes r ON r.RecipeId = p.RecipeId " +
+                "LEFT JOIN users u ON r.authorId = u.authorId " +
+                "LEFT JOIN recipe_ingredients ri ON r.RecipeId = ri.recipeId " +
+                "GROUP BY r.RecipeId, u.authorName, p.totalCount" + orderBy;
 
+        // 添加分页
+        int offset = (page - 1) * size;
+        params.add(size);
+        params.add(offset);
+
+        // 执行查询，总数随每一行返回
+        long[] total = {-1};
+        List<RecipeRecord> recipes = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            total[0] = rs.getLong("totalCount");
+            return recipeRowMapper.mapRow(rs, rowNum);
+        }, params.toArray());
+
+        if (total[0] < 0) {
+            // 页码超出范围时没有行携带总数，只有这种情况才单独计数
+            Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM recipes r" + filter, Long.class,
+                    params.subList(0, params.size() - 2).toArray());
+            total[0] = count != null ? count : 0L;
+        }
+
+        return PageResult.<RecipeRecord>builder()
+                .items(recipes)
+                .page(page)
+                .size(size)
+                .total(total[0])
+                .build();
+    }
+
+    /**
+     * Keyset-paginated variant of {@link #searchRecipes}: same filters and sort orders, but the next page is
+     * addressed by {@link CursorPage#getNextCursor()} instead of a page number, so deep pages cost the same as the
+     * first. With {@code rating_desc} and the default {@code date_desc} each page is a range seek on
+     * {@code (AggregatedRating, RecipeId)} or {@code (DatePublished, RecipeId)}.
+     *
+     * @param cursor {@code null} for the first page, otherwise the cursor returned with the previous page
+     * @throws IllegalArgumentException if {@code size <= 0} or the cursor is invalid for this sort
+     */
+    public CursorPage<RecipeRecord> searchRecipesAfter(String keyword, String category, Double minRating,
+                                                       String cursor, int size, String sort) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid size parameter");
+        }
+
+        String keyColumn;
+        boolean descending;
+        switch (sort == null ? "" : sort) {
+            case "rating_desc":
+                keyColumn = "aggregatedRating";
+                descending = true;
+                break;
+            case "calories_asc":
+                keyColumn = "calories";
+                descending = false;
+                break;
+            default:
+                sort = "date_desc";
+                keyColumn = "datePublished";
+                descending = true;
+        }
+        String orderBy = " ORDER BY r." + keyColumn + (descending ? " DESC" : " ASC NULLS LAST") + ", r.RecipeId DESC";
+
+        StringBuilder filter = new StringBuilder(" WHERE 1=1");
         List<Object> params = new ArrayList<>();
+        appendSearchFilter(filter, params, keyword, category, minRating);
+        String tag = KeysetCursor.tag("searchRecipes", sort);
+        KeysetCursor after = KeysetCursor.decode(cursor, tag);
+        if (after != null) {
+            after.appendSeek(filter, params, "r." + keyColumn, descending, "r.RecipeId");
+        }
+        params.add(size + 1);
+
+        String sql = "WITH page AS (" +
+                "    SELECT r.RecipeId FROM recipes r" + filter + orderBy + " LIMIT ?" +
+                ") " +
+                "SELECT r.*, u.authorName, " +
+                "       ARRAY_AGG(ri.IngredientPart ORDER BY LOWER(ri.IngredientPart)) " +
+                "           FILTER (WHERE ri.IngredientPart IS NOT NULL) as ingredientParts " +
+                "FROM page p " +
+                "JOIN recipes r ON r.RecipeId = p.RecipeId " +
+                "LEFT JOIN users u ON r.authorId = u.authorId " +
+                "LEFT JOIN recipe_ingredients ri ON r.RecipeId = ri.recipeId " +
+                "GROUP BY r.RecipeId, u.authorName" + orderBy;
+
+        return KeysetCursor.fetch(jdbcTemplate, sql, params, size, tag, keyColumn, "RecipeId", recipeRowMapper);
+    }
 
+    // searchRecipes 的过滤条件，两种分页方式共用
+    private static void appendSearchFilter(StringBuilder filter, List<Object> params,
+                                           String keyword, String category, Double minRating) {
         // 添加过滤条件
         if (StringUtils.hasText(keyword)) {
-            sql.append(" AND (LOWER(r.name) LIKE LOWER(?) OR LOWER(r.description) LIKE LOWER(?))");
+            if (hasTrigram(keyword)) {
+                // 与三元组 GIN 索引的表达式一致，位图扫描只取出候选行，再按同一条件复核
+                filter.append(" AND (LOWER(r.name) LIKE LOWER(?) OR LOWER(r.description) LIKE LOWER(?))");
+            } else {
+                // 关键词提取不出三元组时索引只能整体扫描，比顺序扫描还慢；拼接 '' 不改变取值，只是让表达式不再匹配索引
+                filter.append(" AND (LOWER(r.name || '') LIKE LOWER(?) OR LOWER(r.description || '') LIKE LOWER(?))");
+            }
             String keywordPattern = "%" + keyword + "%";
             params.add(keywordPattern);
             params.add(keywordPattern);
         }
 
         if (StringUtils.hasText(category)) {
-            sql.append(" AND r.recipeCategory = ?");
+            filter.append(" AND r.recipeCategory = ?");
             params.add(category);
         }
 
         if (minRating != null) {
-            sql.append(" AND r.aggregatedRating >= ?");
+            filter.append(" AND r.aggregatedRating >= ?");
             params.add(minRating);
         }
+    }
 
-        sql.append(" GROUP BY r.RecipeId, u.authorName");
-
-        // 添加排序
-        if (StringUtils.hasText(sort)) {
-            switch (sort) {
-                case "rating_desc":
-                    sql.append(" ORDER BY r.aggregatedRating DESC, RecipeId DESC");
-                    break;
-                case "date_desc":
-                    sql.append(" ORDER BY r.datePublished DESC, RecipeId DESC");
-                    break;
-                case "calories_asc":
-                    sql.append(" ORDER BY r.calories ASC NULLS LAST, RecipeId DESC");
-                    break;
-                default:
-                    // 默认按发布日期降序
-                    sql.append(" ORDER BY r.datePublished DESC, RecipeId DESC");
+    // LIKE 模式中连续 3 个以上字母或数字（不含通配符）才能提取出 pg_trgm 的三元组
+    private static boolean hasTrigram(String keyword) {
+        int run = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            run = Character.isLetterOrDigit(keyword.charAt(i)) ? run + 1 : 0;
+            if (run >= 3) {
+                return true;
             }
-        } else {
-            sql.append(" ORDER BY r.datePublished DESC, RecipeId DESC");
         }
-
-        // 计算总记录数：从构造的查询中提取 FROM ... 子句（直到 GROUP BY/ORDER BY/LIMIT）
-        // 并使用 COUNT(DISTINCT r.RecipeId) 防止因 JOIN 导致重复计数。
-        String sqlStr = sql.toString();
-        String lower = sqlStr.toLowerCase();
-        int fromIdx = lower.indexOf("from recipes r");
-        int groupByIdx = lower.indexOf("group by", fromIdx >= 0 ? fromIdx : 0);
-        int orderByIdx = lower.indexOf("order by", fromIdx >= 0 ? fromIdx : 0);
-        int limitIdx = lower.indexOf("limit", fromIdx >= 0 ? fromIdx : 0);
-
-        int cutIdx = sqlStr.length();
-        if (groupByIdx >= 0 && groupByIdx < cutIdx) cutIdx = groupByIdx;
-        if (orderByIdx >= 0 && orderByIdx < cutIdx) cutIdx = orderByIdx;
-        if (limitIdx >= 0 && limitIdx < cutIdx) cutIdx = limitIdx;
-
-        String countSql;
-        if (fromIdx >= 0) {
-            String fromToCut = sqlStr.substring(fromIdx, cutIdx);
-            countSql = "SELECT COUNT(DISTINCT r.RecipeId) " + fromToCut;
-        } else {
-            // 如果未找到预期的 FROM 子句，回退为简单安全计数
-            countSql = "SELECT COUNT(DISTINCT r.RecipeId) FROM recipes r LEFT JOIN users u ON r.authorId = u.authorId";
-        }
-
-        Long totalObj = jdbcTemplate.queryForObject(countSql, Long.class, params.toArray());
-        long total = totalObj != null ? totalObj : 0L;
-
-        // 添加分页
-        sql.append(" LIMIT ? OFFSET ?");
-        int offset = (page - 1) * size;
-        params.add(size);
-        params.add(offset);
-
-        // 执行查询
-        List<RecipeRecord> recipes = jdbcTemplate.query(sql.toString(), params.toArray(), recipeRowMapper);
-
-        return PageResult.<RecipeRecord>builder()
-                .items(recipes)
-                .page(page)
-                .size(size)
-                .total(total)
-                .build();
+        return false;
     }
 
     @Override
@@ -243,9 +346,19 @@ public class RecipeServiceImpl implements RecipeService {
             throw new IllegalArgumentException("Invalid cookTime or prepTime format: " + e.getMessage());
         }
 
-        // 生成新的食谱ID（使用数据库 max+1 策略）
-        Long newRecipeId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(RecipeId), 0) + 1 FROM recipes", Long.class);
+        // 分配新的食谱ID；事务回滚时该 id 会退回分配器
+        long newRecipeId = idAllocator.allocate(IdAllocator.Key.RECIPE);
+
+        // 整理食材（去首尾空白、跳过空串），其数量随食谱一起写入 IngredientCount
+        List<Object[]> batchArgs = new ArrayList<>();
+        if (dto.getRecipeIngredientParts() != null) {
+            for (String raw : dto.getRecipeIngredientParts()) {
+                if (raw == null) continue;
+                String ingredient = raw.trim();
+                if (ingredient.isEmpty()) continue;
+                batchArgs.add(new Object[]{newRecipeId, ingredient});
+            }
+        }
 
         // 插入食谱基本信息
         String sql = """
@@ -255,8 +368,8 @@ public class RecipeServiceImpl implements RecipeService {
                     reviewCount, calories, fatContent, saturatedFatContent,
                     cholesterolContent, sodiumContent, carbohydrateContent,
                     fiberContent, sugarContent, proteinContent, recipeServings,
-                    recipeYield
-                ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                    recipeYield, IngredientCount
+                ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
 
         Timestamp datePublished = dto.getDatePublished() != null ? dto.getDatePublished() : Timestamp.from(Instant.now());
@@ -283,23 +396,17 @@ public class RecipeServiceImpl implements RecipeService {
                 dto.getSugarContent(),
                 dto.getProteinContent(),
                 dto.getRecipeServings(),
-                dto.getRecipeYield()
+                dto.getRecipeYield(),
+                batchArgs.size()
         );
 
         // 插入食材
-        if (dto.getRecipeIngredientParts() != null && dto.getRecipeIngredientParts().length > 0) {
+        if (!batchArgs.isEmpty()) {
             String insertIngredientSql = "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) VALUES (?, ?)";
-
-            List<Object[]> batchArgs = new ArrayList<>();
-            for (String raw : dto.getRecipeIngredientParts()) {
-                if (raw == null) continue;
-                String ingredient = raw.trim();
-                if (ingredient.isEmpty()) continue;
-                batchArgs.add(new Object[]{newRecipeId, ingredient});
-            }
-
             jdbcTemplate.batchUpdate(insertIngredientSql, batchArgs);
         }
+        recipeCache.invalidate(newRecipeId);
+        feedTimeline.recipeCreated(newRecipeId);
 
         return newRecipeId;
     }
@@ -349,6 +456,8 @@ public class RecipeServiceImpl implements RecipeService {
         // 4. 删除食谱（物理删除）
         String deleteRecipeSql = "DELETE FROM recipes WHERE RecipeId = ?";
         int deleted = jdbcTemplate.update(deleteRecipeSql, recipeId);
+        recipeCache.invalidate(recipeId);
+        feedTimeline.recipeDeleted(recipeId);
 
         if (deleted == 0) {
             throw new IllegalArgumentException("Recipe deletion failed");
@@ -462,42 +571,44 @@ public class RecipeServiceImpl implements RecipeService {
 
         // 8. 执行更新（在同一事务内，已提前验证）
         jdbcTemplate.update(updateSql.toString(), params.toArray());
+        recipeCache.invalidate(recipeId);
     }
 
+    /**
+     * The closest pair of recipes by calories, found with one sort instead of comparing every pair.
+     * <p>
+     * Ordered by {@code (Calories, RecipeId)}, the best pair is always adjacent: when the smallest difference is
+     * positive no two recipes share a calorie value, so any pair at that difference has nothing between it; when it is
+     * zero, the two smallest ids of an equal-calorie run are neighbours and beat every other pair of the run under the
+     * (difference, smaller id, larger id) ordering. Comparing each recipe with its predecessor ({@code LAG}) therefore
+     * gives the same pair as the self join over all pairs. It reads the {@code (Calories, RecipeId)} index in order.
+     * Public so that the benchmark can run the same statement on generated data.
+     */
+    public static final String CLOSEST_CALORIE_PAIR_SQL = """
+            WITH ordered AS (
+                SELECT RecipeId, Calories,
+                       LAG(RecipeId) OVER w AS PrevId,
+                       LAG(Calories) OVER w AS PrevCalories
+                FROM recipes
+                WHERE Calories IS NOT NULL
+                WINDOW w AS (ORDER BY Calories, RecipeId)
+            )
+            SELECT
+                LEAST(PrevId, RecipeId) AS RecipeA,
+                GREATEST(PrevId, RecipeId) AS RecipeB,
+                CASE WHEN PrevId < RecipeId THEN PrevCalories ELSE Calories END AS CaloriesA,
+                CASE WHEN PrevId < RecipeId THEN Calories ELSE PrevCalories END AS CaloriesB,
+                ABS(Calories - PrevCalories) AS Difference
+            FROM ordered
+            WHERE PrevId IS NOT NULL
+            ORDER BY Difference, RecipeA, RecipeB
+            LIMIT 1
+            """;
+
     @Override
     public Map<String, Object> getClosestCaloriePair() {
-        // 使用SQL窗口函数找到卡路里最接近的食谱对
-        String sql = """
-                WITH recipe_calories AS (
-                    SELECT RecipeId, calories, name
-                    FROM recipes
-                    WHERE calories IS NOT NULL
-                ),
-                pairs AS (
-                    SELECT
-                        r1.RecipeId AS RecipeA,
-                        r2.RecipeId AS RecipeB,
-                        r1.calories AS CaloriesA,
-                        r2.calories AS CaloriesB,
-                        r1.name AS name_a,
-                        r2.name AS name_b,
-                        ABS(r1.calories - r2.calories) AS Difference,
-                        ROW_NUMBER() OVER (
-                            ORDER BY ABS(r1.calories - r2.calories),
-                                     LEAST(r1.RecipeId, r2.RecipeId),
-                                     GREATEST(r1.RecipeId, r2.RecipeId)
-                        ) as rn
-                    FROM recipe_calories r1
-                    CROSS JOIN recipe_calories r2
-                    WHERE r1.RecipeId < r2.RecipeId
-                )
-                SELECT RecipeA, RecipeB, CaloriesA, CaloriesB, Difference
-                FROM pairs
-                WHERE rn = 1
-                """;
-
         try {
-            Map<String, Object> temp = jdbcTemplate.queryForMap(sql);
+            Map<String, Object> temp = jdbcTemplate.queryForMap(CLOSEST_CALORIE_PAIR_SQL);
             Map<String, Object> result = new HashMap<>();
             result.put("RecipeA", temp.get("recipea"));
             result.put("RecipeB", temp.get("recipeb"));
@@ -512,26 +623,36 @@ public class RecipeServiceImpl implements RecipeService {
 
     @Override
     public List<Map<String, Object>> getTop3MostComplexRecipesByIngredients() {
+        return getTopNMostComplexRecipes(3);
+    }
+
+    /**
+     * The {@code n} recipes with the most ingredients, ties broken by smaller id; recipes without ingredients are
+     * left out. Reads the first {@code n} entries of the {@code (IngredientCount DESC, RecipeId)} index instead of
+     * aggregating recipe_ingredients.
+     *
+     * @return maps with keys {@code RecipeId}, {@code Name} and {@code IngredientCount}, most complex first
+     */
+    public List<Map<String, Object>> getTopNMostComplexRecipes(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
         String sql = """
-                SELECT
-                    r.RecipeId AS "RecipeId",
-                    r.name AS "Name",
-                    COUNT(ri.IngredientPart) AS "IngredientCount"
-                FROM recipes r
-                JOIN recipe_ingredients ri ON r.RecipeId = ri.RecipeId
-                GROUP BY r.RecipeId, r.name
-                ORDER BY COUNT(ri.IngredientPart) DESC, r.RecipeId
-                LIMIT 3
+                SELECT RecipeId AS "RecipeId", Name AS "Name", IngredientCount AS "IngredientCount"
+                FROM recipes
+                WHERE IngredientCount > 0
+                ORDER BY IngredientCount DESC, RecipeId
+                LIMIT ?
                 """;
 
-        List<Map<String, Object>> results = jdbcTemplate.queryForList(sql);
+        List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, n);
 
         List<Map<String, Object>> formattedResults = new ArrayList<>();
         for (Map<String, Object> row : results) {
             Map<String, Object> formatted = new LinkedHashMap<>();
             formatted.put("RecipeId", row.get("RecipeId"));
             formatted.put("Name", row.get("Name"));
-            formatted.put("IngredientCount", ((Long) row.get("IngredientCount")).intValue());
+            formatted.put("IngredientCount", ((Number) row.get("IngredientCount")).intValue());
             formattedResults.add(formatted);
         }
 
@@ -569,18 +690,65 @@ public class RecipeServiceImpl implements RecipeService {
     }
 
     // 前端要求，增加根据发布者id查询所有食谱的方法
+    /**
+     * All recipes of one author, ordered by id, loaded with two queries (recipes, then their ingredients)
+     * instead of one {@link #getRecipeById} per recipe.
+     */
     public List<RecipeRecord> getRecipesByAuthorId(long authorId) {
         if (authorId <= 0) {
             throw new IllegalArgumentException("Author ID must be positive");
         }
+        return loadRecipes("r.AuthorId = ?", authorId);
+    }
 
-        String sql = "SELECT recipes.recipeId FROM recipes WHERE authorId = ?";
-        List<Long> recipeIds = jdbcTemplate.queryForList(sql, Long.class, authorId);
-        List<RecipeRecord> recipes = new ArrayList<>();
-        for (Long recipeId : recipeIds) {
-            recipes.add(getRecipeById(recipeId));
+    /**
+     * Cached recipes are served from the {@link RecipeCache}; all others are loaded together with two queries.
+     */
+    @Override
+    public List<RecipeRecord> getRecipesByIds(long[] recipeIds) {
+        if (recipeIds == null) {
+            throw new IllegalArgumentException("recipeIds cannot be null");
+        }
+        for (long recipeId : recipeIds) {
+            if (recipeId <= 0) {
+                throw new IllegalArgumentException("recipeId must be positive");
+            }
+        }
+        return recipeCache.getAll(recipeIds, ids -> loadRecipes("r.RecipeId = ANY(?)", ids));
+    }
+
+    // 两条集合查询：先取满足条件的菜谱行，再一次取出它们的全部食材，按菜谱分组装配（顺序与 ARRAY_AGG 的 LOWER 排序一致）
+    private List<RecipeRecord> loadRecipes(String condition, Object arg) {
+        String recipeSql = """
+                SELECT r.*, u.authorName, NULL::varchar[] AS ingredientParts
+                FROM recipes r
+                LEFT JOIN users u ON r.authorId = u.authorId
+                WHERE %s
+                ORDER BY r.RecipeId
+                """.formatted(condition);
+        List<RecipeRecord> recipes = jdbcTemplate.query(recipeSql, recipeRowMapper, arg);
+        if (recipes.isEmpty()) {
+            return recipes;
+        }
+
+        String ingredientSql = """
+                SELECT ri.RecipeId, ri.IngredientPart
+                FROM recipe_ingredients ri
+                JOIN recipes r ON r.RecipeId = ri.RecipeId
+                WHERE %s
+                ORDER BY ri.RecipeId, LOWER(ri.IngredientPart)
+                """.formatted(condition);
+        Map<Long, List<String>> parts = new HashMap<>();
+        jdbcTemplate.query(ingredientSql, rs -> {
+            String part = rs.getString(2).trim();
+            if (!part.isEmpty()) {
+                parts.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>()).add(part);
+            }
+        }, arg);
+        for (RecipeRecord recipe : recipes) {
+            List<String> recipeParts = parts.get(recipe.getRecipeId());
+            recipe.setRecipeIngredientParts(recipeParts == null ? new String[0] : recipeParts.toArray(new String[0]));
         }
         return recipes;
     }
 }
-
@@ -1,6 +1,7 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
@@ -17,6 +18,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -32,6 +34,14 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private RecipeCache recipeCache;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    private static final String LIST_BY_RECIPE_CURSOR = KeysetCursor.tag("listByRecipe", "date_desc");
+
     // 验证用户是否有效且活跃
     private boolean isValidActiveUser(AuthInfo userInfo) {
         try {
@@ -76,6 +86,9 @@ public class ReviewServiceImpl implements ReviewService {
 
     // 重新计算食谱的评分统计（被多个方法复用）
     private void refreshRecipeRatingStats(long recipeId) {
+        // 评分与评论数是缓存的 RecipeRecord 的一部分
+        recipeCache.invalidate(recipeId);
+
         // 计算平均评分和评论数
         String statSql = """
             SELECT
@@ -124,43 +137,15 @@ public class ReviewServiceImpl implements ReviewService {
             throw new IllegalArgumentException("Rating must be between 1 and 5");
         }
 
-        // 2. 生成 reviewId（简单策略）并尝试插入，防止重复主键造成失败
-        int maxAttempts = 5;
-        long reviewId = -1L;
+        // 2. 分配 reviewId 并插入；分配器保证 id 不与其他写者冲突，事务回滚时 id 会退回
+        long reviewId = idAllocator.allocate(IdAllocator.Key.REVIEW);
         Timestamp now = Timestamp.from(Instant.now());
         String insertSql = "INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        jdbcTemplate.update(insertSql, reviewId, recipeId, auth.getAuthorId(), rating, review, now, now);
 
-        for (int attempt = 0; attempt < maxAttempts; attempt++) {
-            // Generate reviewId as max(existing ReviewId)+1 to follow requested strategy
-            try {
-                Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(ReviewId), 0) FROM reviews", Long.class);
-                reviewId = (maxId == null ? 1L : maxId + 1L);
-            } catch (Exception e) {
-                // If query fails for some reason, fallback to timestamp-based id
-                reviewId = System.currentTimeMillis() % 1000000000L;
-            }
-
-            try {
-                int inserted = jdbcTemplate.update(insertSql, reviewId, recipeId, auth.getAuthorId(), rating, review, now, now);
-                if (inserted > 0) {
-                    // 3. 刷新食谱统计（平均分与评论数）
-                    refreshRecipeRatingStats(recipeId);
-                    //System.out.printf("刷新食谱统计完成%d\n",rating);
-
-//                    log.info("Review {} added for recipe {} by user {}", reviewId, recipeId, auth.getAuthorId());
-                    return reviewId;
-                }
-            } catch (Exception e) {
-                // 可能是主键冲突或其他原因，记录并重试
-//                log.debug("Attempt {} to insert review failed with id {}: {}", attempt + 1, reviewId, e.toString());
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException ignored) {
-                }
-            }
-        }
-
-        throw new RuntimeException("Failed to insert review after multiple attempts");
+        // 3. 刷新食谱统计（平均分与评论数）
+        refreshRecipeRatingStats(recipeId);
+        return reviewId;
     }
 
     @Override
@@ -336,6 +321,39 @@ public class ReviewServiceImpl implements ReviewService {
         return likeCount != null ? likeCount : 0;
     }
 
+    // listByRecipe 与 listByRecipeAfter 共用的评论映射，点赞用户来自 liker_ids 列
+    private final RowMapper<ReviewRecord> reviewRowMapper = new RowMapper<ReviewRecord>() {
+        @Override
+        public ReviewRecord mapRow(java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {
+            ReviewRecord record = ReviewRecord.builder()
+                    .reviewId(rs.getLong("ReviewId"))
+                    .recipeId(rs.getLong("RecipeId"))
+                    .authorId(rs.getLong("AuthorId"))
+                    .authorName(rs.getString("AuthorName"))
+                    .rating(rs.getFloat("Rating"))
+                    .review(rs.getString("Review"))
+                    .dateSubmitted(rs.getTimestamp("DateSubmitted"))
+                    .dateModified(rs.getTimestamp("DateModified"))
+                    .build();
+
+            // 处理点赞用户数组
+            java.sql.Array likerIdsArray = rs.getArray("liker_ids");
+            if (likerIdsArray != null) {
+                Long[] likerIds = (Long[]) likerIdsArray.getArray();
+                if (likerIds != null && likerIds.length > 0) {
+                    long[] likes = Arrays.stream(likerIds).mapToLong(Long::longValue).toArray();
+                    record.setLikes(likes);
+                } else {
+                    record.setLikes(new long[0]);
+                }
+            } else {
+                record.setLikes(new long[0]);
+            }
+
+            return record;
+        }
+    };
+
     @Override
     public PageResult<ReviewRecord> listByRecipe(long recipeId, int page, int size, String sort) {
         // 1. 验证参数
@@ -408,37 +426,7 @@ public class ReviewServiceImpl implements ReviewService {
         """, orderBy);
 
         // 使用自定义RowMapper处理结果
-        List<ReviewRecord> reviews = jdbcTemplate.query(querySql, new RowMapper<ReviewRecord>() {
-            @Override
-            public ReviewRecord mapRow(java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {
-                ReviewRecord record = ReviewRecord.builder()
-                        .reviewId(rs.getLong("ReviewId"))
-                        .recipeId(rs.getLong("RecipeId"))
-                        .authorId(rs.getLong("AuthorId"))
-                        .authorName(rs.getString("AuthorName"))
-                        .rating(rs.getFloat("Rating"))
-                        .review(rs.getString("Review"))
-                        .dateSubmitted(rs.getTimestamp("DateSubmitted"))
-                        .dateModified(rs.getTimestamp("DateModified"))
-                        .build();
-
-                // 处理点赞用户数组
-                java.sql.Array likerIdsArray = rs.getArray("liker_ids");
-                if (likerIdsArray != null) {
-                    Long[] likerIds = (Long[]) likerIdsArray.getArray();
-                    if (likerIds != null && likerIds.length > 0) {
-                        long[] likes = Arrays.stream(likerIds).mapToLong(Long::longValue).toArray();
-                        record.setLikes(likes);
-                    } else {
-                        record.setLikes(new long[0]);
-                    }
-                } else {
-                    record.setLikes(new long[0]);
-                }
-
-                return record;
-            }
-        }, recipeId, size, offset);
+        List<ReviewRecord> reviews = jdbcTemplate.query(querySql, reviewRowMapper, recipeId, size, offset);
 
         // 7. 构建分页结果
         return PageResult.<ReviewRecord>builder()
@@ -449,6 +437,59 @@ public class ReviewServiceImpl implements ReviewService {
                 .build();
     }
 
+    /**
+     * Keyset-paginated variant of {@link #listByRecipe}, ordered by {@code DateModified DESC, ReviewId DESC}.
+     * The next page is addressed by {@link CursorPage#getNextCursor()}, so each page is a range seek on
+     * {@code (RecipeId, DateModified, ReviewId)}, and likes are gathered only for the reviews on the page.
+     *
+     * @param cursor {@code null} for the first page, otherwise the cursor returned with the previous page
+     * @throws IllegalArgumentException if {@code size <= 0} or the cursor is invalid
+     */
+    public CursorPage<ReviewRecord> listByRecipeAfter(long recipeId, String cursor, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        if (!isValidRecipe(recipeId)) {
+            return CursorPage.<ReviewRecord>builder()
+                    .items(Collections.emptyList())
+                    .size(size)
+                    .build();
+        }
+
+        StringBuilder sql = new StringBuilder("""
+            SELECT
+                r.ReviewId,
+                r.RecipeId,
+                r.AuthorId,
+                u.AuthorName,
+                r.Rating,
+                r.Review,
+                r.DateSubmitted,
+                r.DateModified,
+                COALESCE(l.liker_ids, '{}') as liker_ids
+            FROM reviews r
+            JOIN users u ON r.AuthorId = u.AuthorId AND u.IsDeleted = FALSE
+            LEFT JOIN LATERAL (
+                SELECT ARRAY_AGG(AuthorId) as liker_ids
+                FROM review_likes
+                WHERE ReviewId = r.ReviewId
+            ) l ON TRUE
+            WHERE r.RecipeId = ?
+        """);
+        List<Object> params = new ArrayList<>();
+        params.add(recipeId);
+
+        KeysetCursor after = KeysetCursor.decode(cursor, LIST_BY_RECIPE_CURSOR);
+        if (after != null) {
+            after.appendSeek(sql, params, "r.DateModified", true, "r.ReviewId");
+        }
+        sql.append(" ORDER BY r.DateModified DESC, r.ReviewId DESC LIMIT ?");
+        params.add(size + 1);
+
+        return KeysetCursor.fetch(jdbcTemplate, sql.toString(), params, size, LIST_BY_RECIPE_CURSOR,
+                "DateModified", "ReviewId", reviewRowMapper);
+    }
+
     @Override
     @Transactional
     public RecipeRecord refreshRecipeAggregatedRating(long recipeId) {
@@ -0,0 +1,352 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The secondary indexes the services rely on, declared in one place.
+ * <p>
+ * The import builds them on the staging tables after loading (one {@code CREATE INDEX} per index, run in parallel),
+ * and {@link #ensure()} creates any that are missing on the live tables, e.g. for a database imported before an index
+ * was declared. {@link #verify()} first checks in the catalog that every declared index exists and is valid, then runs
+ * {@code EXPLAIN} on the selective service queries with sequential scans disabled, and reports every query that still
+ * reads a whole table, i.e. one that no index can narrow down.
+ */
+@Slf4j
+public class SchemaIndexes {
+
+    private static final String TRIGRAM_EXTENSION = "pg_trgm";
+
+    // EXPLAIN 文本中的扫描节点，如 "Seq Scan on users"、"Index Only Scan using x on user_follows"
+    private static final Pattern SCAN_NODE = Pattern.compile("(Seq Scan|Index Scan|Index Only Scan)(?: Backward)?(?: using \\S+)? on (\\S+)");
+
+    /**
+     * One declared index:
+     * {@code CREATE INDEX <table>_<name>_idx ON <table> [USING <method>] (<columns>) [INCLUDE (<include>)]}.
+     */
+    private static final class Index {
+
+        final String table;
+
+        final String name;
+
+        final String method;
+
+        final String columns;
+
+        final String include;
+
+        Index(String table, String name, String columns, String include) {
+            this(table, name, null, columns, include);
+        }
+
+        Index(String table, String name, String method, String columns, String include) {
+            this.table = table;
+            this.name = name;
+            this.method = method;
+            this.columns = columns;
+            this.include = include;
+        }
+
+        boolean needsTrigram() {
+            return columns.contains("gin_trgm_ops");
+        }
+
+        String indexName(String suffix) {
+            return table + suffix + "_" + name + "_idx";
+        }
+
+        String createSql(String suffix) {
+            return "CREATE INDEX IF NOT EXISTS " + indexName(suffix) + " ON " + table + suffix
+                    + (method == null ? "" : " USING " + method) + " (" + columns + ")" + (include == null ? "" : " INCLUDE (" + include + ")");
+        }
+    }
+
+    private static final List<Index> INDEXES = List.of(
+            // listByRecipe / deleteRecipe / 评分重算：按菜谱找评论，评分随索引返回；
+            // 后两列与 listByRecipeAfter 的排序一致，游标翻页直接在索引上定位
+            new Index("reviews", "recipeid", "RecipeId, DateModified DESC, ReviewId DESC", "Rating"),
+            // 删除用户时按作者清理评论
+            new Index("reviews", "authorid", "AuthorId", null),
+            // feed 与按作者查菜谱：关注作者的菜谱按发布时间倒序取一页
+            new Index("recipes", "authorid", "AuthorId, DatePublished DESC, RecipeId DESC", null),
+            new Index("recipes", "recipecategory", "RecipeCategory", null),
+            // searchRecipesAfter 两种排序的游标定位
+            new Index("recipes", "datepublished", "DatePublished DESC, RecipeId DESC", null),
+            new Index("recipes", "aggregatedrating", "AggregatedRating DESC, RecipeId DESC", null),
+            // getClosestCaloriePair 按卡路里顺序扫描（仅索引扫描，免排序）
+            new Index("recipes", "calories", "Calories, RecipeId", null),
+            // getTopNMostComplexRecipes：按食材数排行，只读索引前 n 项
+            new Index("recipes", "ingredientcount", "IngredientCount DESC, RecipeId", null),
+            // searchRecipes 的子串匹配 LOWER(x) LIKE LOWER('%kw%')：三元组 GIN 索引能直接服务同一个表达式，
+            // 查询条件不变，结果集与顺序扫描完全一致
+            new Index("recipes", "name_trgm", "gin", "LOWER(Name) gin_trgm_ops", null),
+            new Index("recipes", "description_trgm", "gin", "LOWER(Description) gin_trgm_ops", null),
+            // 粉丝列表：主键 (FollowerId, FollowingId) 只能服务“我关注了谁”
+            new Index("user_follows", "followingid", "FollowingId", "FollowerId"),
+            new Index("review_likes", "authorid", "AuthorId", null),
+            // register 的重名检查
+            new Index("users", "authorname", "AuthorName", null)
+    );
+
+    /**
+     * Selective service queries that must be answered through an index: name -> {SQL, sample parameters...}.
+     * They mirror the WHERE clauses the services use; parameter values only need the right types.
+     */
+    private static final Map<String, Object[]> CHECKED_QUERIES = Map.ofEntries(
+            Map.entry("register: name taken", new Object[]{
+                    "SELECT COUNT(*) FROM users WHERE AuthorName = ?", "name"}),
+            Map.entry("getFollowers", new Object[]{
+                    "SELECT FollowerId FROM user_follows WHERE FollowingId = ? ORDER BY FollowerId", 1L}),
+            Map.entry("feed", new Object[]{"""
+                    SELECT r.RecipeId FROM recipes r
+                    WHERE r.AuthorId IN (SELECT FollowingId FROM user_follows WHERE FollowerId = ?)
+                    ORDER BY r.DatePublished DESC, r.RecipeId DESC LIMIT 10""", 1L}),
+            Map.entry("listByRecipe", new Object[]{
+                    "SELECT ReviewId, Rating FROM reviews WHERE RecipeId = ?", 1L}),
+            Map.entry("deleteRecipe: likes", new Object[]{
+                    "DELETE FROM review_likes WHERE ReviewId IN (SELECT ReviewId FROM reviews WHERE RecipeId = ?)", 1L}),
+            Map.entry("searchRecipes: keyword", new Object[]{
+                    "SELECT RecipeId FROM recipes WHERE LOWER(Name) LIKE LOWER(?) OR LOWER(Description) LIKE LOWER(?)",
+                    "%cake%", "%cake%"}),
+            Map.entry("recipes by author", new Object[]{
+                    "SELECT RecipeId FROM recipes WHERE AuthorId = ?", 1L}),
+            Map.entry("searchRecipes: category", new Object[]{
+                    "SELECT RecipeId FROM recipes WHERE RecipeCategory = ?", "Dessert"}),
+            Map.entry("likes by author", new Object[]{
+                    "SELECT ReviewId FROM review_likes WHERE AuthorId = ?", 1L}),
+            Map.entry("most complex recipes", new Object[]{
+                    "SELECT RecipeId FROM recipes WHERE IngredientCount > 0 ORDER BY IngredientCount DESC, RecipeId LIMIT ?", 3}),
+            Map.entry("reviews by author", new Object[]{
+                    "SELECT ReviewId FROM reviews WHERE AuthorId = ?", 1L})
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SchemaIndexes(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Installs the {@value #TRIGRAM_EXTENSION} extension if needed. It is a trusted extension, so the database
+     * owner may install it; when it cannot be installed, the trigram indexes are skipped and keyword search
+     * keeps working through sequential scans.
+     *
+     * @return whether trigram indexes can be created
+     */
+    public boolean enableTrigram() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS " + TRIGRAM_EXTENSION);
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Extension {} is not available, skipping trigram indexes: {}", TRIGRAM_EXTENSION, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param trigram whether to include the indexes that need {@value #TRIGRAM_EXTENSION}, see {@link #enableTrigram()}
+     * @return one {@code CREATE INDEX IF NOT EXISTS} statement per declared index, on the tables with the given suffix
+     */
+    public static List<String> createStatements(String suffix, boolean trigram) {
+        List<String> statements = new ArrayList<>();
+        for (Index index : INDEXES) {
+            if (trigram || !index.needsTrigram()) {
+                statements.add(index.createSql(suffix));
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Creates the declared indexes that are missing on the live tables, and recreates those left invalid, e.g. by an
+     * interrupted {@code CREATE INDEX CONCURRENTLY}, which {@code CREATE INDEX IF NOT EXISTS} would keep as they are.
+     *
+     * @return names of the indexes that were created or rebuilt
+     */
+    public List<String> ensure() {
+        List<String> created = new ArrayList<>();
+        boolean trigram = enableTrigram();
+        for (Index index : INDEXES) {
+            if (index.needsTrigram() && !trigram) {
+                continue;
+            }
+            String name = index.indexName("");
+            Boolean valid = validity(name);
+            if (Boolean.TRUE.equals(valid)) {
+                continue;
+            }
+            if (valid != null) {
+                jdbcTemplate.execute("DROP INDEX " + name);
+            }
+            jdbcTemplate.execute(index.createSql(""));
+            jdbcTemplate.execute("ANALYZE " + index.table);
+            created.add(name);
+        }
+        if (!created.isEmpty()) {
+            log.info("Created missing indexes {}", created);
+        }
+        return created;
+    }
+
+    // 索引是否可用：不存在时为 null；建索引中断留下的索引存在但 indisvalid / indisready 为 false
+    private Boolean validity(String indexName) {
+        List<Boolean> valid = jdbcTemplate.queryForList(
+                "SELECT indisvalid AND indisready FROM pg_index WHERE indexrelid = to_regclass(?)", Boolean.class, indexName);
+        return valid.isEmpty() ? null : valid.get(0);
+    }
+
+    /**
+     * Checks the live tables in two steps. First, every declared index must exist and be valid, which is read from
+     * the catalog and does not depend on statistics; trigram indexes are only required when {@value #TRIGRAM_EXTENSION}
+     * is installed. Then {@code EXPLAIN} runs on the generic plan of each checked query with sequential scans disabled.
+     * The planner then only reads a whole table (a sequential scan, or an index scan without an index condition) when
+     * no index fits, so the result depends neither on the sample parameters nor on how much data the tables hold.
+     * Whole reads of tables that statistics show to be empty are not reported by this second step, since the planner
+     * may prefer them even when an index fits; the first step still requires their indexes.
+     *
+     * @return {@code "index <name>: missing"} or {@code "index <name>: invalid"} for each index that cannot be used,
+     * then the names of the queries that still read a whole table; empty when everything can use its index
+     */
+    public List<String> verify() {
+        List<String> flagged = new ArrayList<>();
+        boolean trigram = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = ?)", Boolean.class, TRIGRAM_EXTENSION));
+        for (Index index : INDEXES) {
+            if (index.needsTrigram() && !trigram) {
+                continue;
+            }
+            String name = index.indexName("");
+            Boolean valid = validity(name);
+            if (valid == null || !valid) {
+                log.warn("Index {} is {}", name, valid == null ? "missing" : "invalid");
+                flagged.add("index " + name + ": " + (valid == null ? "missing" : "invalid"));
+            }
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) conn -> {
+            conn.setAutoCommit(false);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET LOCAL enable_seqscan = off");
+                    stmt.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+                }
+                for (Map.Entry<String, Object[]> query : CHECKED_QUERIES.entrySet()) {
+                    List<String> plan = explain(conn, query.getValue());
+                    boolean fullScan = false;
+                    for (String table : tablesReadWhole(plan)) {
+                        fullScan |= !isEmpty(conn, table);
+                    }
+                    if (fullScan) {
+                        log.warn("Query [{}] falls back to a full scan:\n{}", query.getKey(), String.join("\n", plan));
+                        flagged.add(query.getKey());
+                    }
+                }
+            } finally {
+                // 只读检查，回滚以撤销 SET LOCAL
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return null;
+        });
+        return flagged;
+    }
+
+    // 计划中读整张表的节点所在的表：顺序扫描，或没有 Index Cond 的索引扫描（只是按索引顺序读全表）
+    private static Set<String> tablesReadWhole(List<String> plan) {
+        Set<String> tables = new HashSet<>();
+        for (int i = 0; i < plan.size(); i++) {
+            String line = plan.get(i);
+            Matcher scan = SCAN_NODE.matcher(line);
+            if (!scan.find()) {
+                continue;
+            }
+            boolean bounded = false;
+            if (!scan.group(1).equals("Seq Scan")) {
+                for (int j = i + 1; j < plan.size() && !plan.get(j).trim().startsWith("->"); j++) {
+                    bounded |= plan.get(j).contains("Index Cond");
+                }
+            }
+            if (!bounded) {
+                tables.add(scan.group(2));
+            }
+        }
+        return tables;
+    }
+
+    // 统计信息表明为空的表（reltuples = 0）即使有索引，计划也可能整表读取，不算问题；索引是否存在已在目录中单独检查。
+    // 从未 ANALYZE 的表（-1）按非空处理
+    private static boolean isEmpty(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT reltuples = 0 FROM pg_class WHERE oid = ?::regclass")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    // 以通用计划（与参数取值无关）解释查询：PREPARE 后在 force_generic_plan 下 EXPLAIN EXECUTE
+    private static List<String> explain(Connection conn, Object[] query) throws SQLException {
+        String sql = (String) query[0];
+        StringBuilder args = new StringBuilder();
+        for (int i = 1; i < query.length; i++) {
+            sql = sql.replaceFirst("\\?", "\\$" + i);
+            Object value = query[i];
+            args.append(i == 1 ? "" : ", ")
+                    .append(value instanceof String ? "'" + ((String) value).replace("'", "''") + "'" : value);
+        }
+        List<String> plan = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            // 出错时先回到保存点，事务恢复可用后再 DEALLOCATE，原来的错误不会被“事务已中止”掩盖
+            stmt.execute("SAVEPOINT index_check");
+            boolean prepared = false;
+            SQLException failure = null;
+            try {
+                stmt.execute("PREPARE index_check AS " + sql);
+                prepared = true;
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN EXECUTE index_check(" + args + ")")) {
+                    while (rs.next()) {
+                        plan.add(rs.getString(1));
+                    }
+                }
+                stmt.execute("RELEASE SAVEPOINT index_check");
+            } catch (SQLException e) {
+                failure = e;
+                try {
+                    stmt.execute("ROLLBACK TO SAVEPOINT index_check");
+                } catch (SQLException rollback) {
+                    e.addSuppressed(rollback);
+                }
+            }
+            // 预备语句属于会话而不是事务，回滚不会清掉它
+            if (prepared) {
+                try {
+                    stmt.execute("DEALLOCATE index_check");
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return plan;
+    }
+}
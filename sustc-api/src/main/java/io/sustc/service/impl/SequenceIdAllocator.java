@@ -0,0 +1,202 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Allocates ids from one PostgreSQL sequence per table ({@code users_authorid_seq}, ...), fetching
+ * {@code sustc.id.block-size} values per round trip so that most allocations never touch the database.
+ * Concurrent writers, in this process or others, never get the same id and never have to retry.
+ * <p>
+ * Sequences are owned by their id column so that they are dropped with the table, and positioned after the largest
+ * id already in the table (never backwards) before the first block is fetched, and again after {@link #reset()}. They
+ * are created outside any request transaction, when the context starts and by {@link #reset()} after an import,
+ * since a sequence created in an uncommitted transaction is invisible to every other one. Positioning and blocks run
+ * on the caller's own connection: {@code setval} and {@code nextval} are not rolled back with the caller, and no
+ * second connection is taken while other writers wait for the block.
+ * <p>
+ * Ids of inserts that failed are released and handed out again before new ones, so a single writer gets the same
+ * consecutive ids as {@code MAX(id) + 1} would give. Ids still held in memory when the process stops are skipped,
+ * leaving gaps of at most one block.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "sustc.id.allocator", havingValue = "sequence", matchIfMissing = true)
+public class SequenceIdAllocator implements IdAllocator {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.id.block-size:50}")
+    private int blockSize;
+
+    private final Map<Key, Ids> ids = new EnumMap<>(Key.class);
+
+    // 每个表的内存状态：预取的序列值与被退回的 id
+    private static final class Ids {
+
+        final ArrayDeque<Long> fetched = new ArrayDeque<>();
+
+        final TreeSet<Long> released = new TreeSet<>();
+
+        boolean synced;
+
+        // reset() 时递增；之前分配出的 id 回滚后不再退回，因为表可能已被重新导入
+        long epoch;
+    }
+
+    public SequenceIdAllocator() {
+        for (Key key : Key.values()) {
+            ids.put(key, new Ids());
+        }
+    }
+
+    @Override
+    public long allocate(Key key) {
+        long id;
+        long epoch;
+        Ids state = ids.get(key);
+        synchronized (state) {
+            epoch = state.epoch;
+            // 先复用退回的 id（最小者优先），与 MAX + 1 在单个写者下分配出的 id 一致
+            Long reused = state.released.pollFirst();
+            if (reused != null) {
+                id = reused;
+            } else {
+                if (state.fetched.isEmpty()) {
+                    fetch(key, state);
+                }
+                id = state.fetched.poll();
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        release(key, id, epoch);
+                    }
+                }
+            });
+        }
+        return id;
+    }
+
+    @Override
+    public void release(Key key, long id) {
+        Ids state = ids.get(key);
+        synchronized (state) {
+            state.released.add(id);
+        }
+    }
+
+    private void release(Key key, long id, long epoch) {
+        Ids state = ids.get(key);
+        synchronized (state) {
+            if (state.epoch == epoch) {
+                state.released.add(id);
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        forget();
+        // 事务内的批量改动提交前，其他连接看不到新的最大 id，提交后需再同步一次
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    forget();
+                    prepare();
+                }
+            });
+        } else {
+            prepare();
+        }
+    }
+
+    // 启动时先建好序列；此时表可能尚未导入，由导入后的 reset() 再建
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        prepare();
+    }
+
+    private void forget() {
+        for (Ids state : ids.values()) {
+            synchronized (state) {
+                state.fetched.clear();
+                state.released.clear();
+                state.synced = false;
+                state.epoch++;
+            }
+        }
+    }
+
+    // 在任何事务之外建立所有序列；定位（setval）留给持有状态锁的 fetch，以免与并发取号交错
+    private void prepare() {
+        for (Key key : Key.values()) {
+            try {
+                jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence(key) + " OWNED BY " + key.table + "." + key.column);
+            } catch (DataAccessException e) {
+                log.debug("Not creating {} yet: {}", sequence(key), e.getMessage());
+            }
+        }
+    }
+
+    // 在调用方的连接上取号：nextval 不受事务回滚影响，也不必为取号再占用一个连接
+    private void fetch(Key key, Ids state) {
+        if (!state.synced) {
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NULL", Boolean.class, sequence(key))) {
+                // 表是在启动之后、未经导入建立的；只能在调用方的事务里建序列，回滚时下次重新建立
+                jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence(key) + " OWNED BY " + key.table + "." + key.column);
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    long epoch = state.epoch;
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (status != STATUS_COMMITTED) {
+                                synchronized (state) {
+                                    if (state.epoch == epoch) {
+                                        state.synced = false;
+                                    }
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+            sync(key);
+            state.synced = true;
+        }
+        state.fetched.addAll(jdbcTemplate.queryForList(
+                "SELECT nextval('" + sequence(key) + "') FROM generate_series(1, ?)", Long.class, Math.max(1, blockSize)));
+    }
+
+    private static String sequence(Key key) {
+        return key.table + "_" + key.column.toLowerCase() + "_seq";
+    }
+
+    // 把序列推进到表中最大 id 之后；已经更靠后时保持不动，以免与其他进程已取得的 id 重复。setval 不受事务回滚影响
+    private void sync(Key key) {
+        String sequence = sequence(key);
+        jdbcTemplate.queryForObject("SELECT setval('" + sequence + "', GREATEST("
+                + "(SELECT COALESCE(MAX(" + key.column + "), 0) + 1 FROM " + key.table + "), "
+                + "(SELECT CASE WHEN is_called THEN last_value + 1 ELSE last_value END FROM " + sequence + ")), false)", Long.class);
+        log.debug("Synchronized {} with {}.{}", sequence, key.table, key.column);
+    }
+}
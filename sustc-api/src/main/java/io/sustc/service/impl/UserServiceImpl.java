@@ -24,6 +24,133 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private AuthCache authCache;
+
+    @Autowired
+    private FeedTimeline feedTimeline;
+
+    @Autowired
+    private FollowRatioBoard followRatioBoard;
+
+    private static final String FEED_CURSOR = KeysetCursor.tag("feed", "date_desc");
+
+    // 关注/取消关注切换：被关注者有效时，已关注则删除关注边、否则插入，并在同一语句里调整双方计数。
+    // 参数依次为 followeeId, followerId (DELETE), followerId (INSERT), followerId (Following 计数)
+    private static final String FOLLOW_TOGGLE_SQL = """
+            WITH target AS (
+                SELECT AuthorId FROM users WHERE AuthorId = ? AND IsDeleted = FALSE
+            ), removed AS (
+                DELETE FROM user_follows f
+                USING target t
+                WHERE f.FollowerId = ? AND f.FollowingId = t.AuthorId
+                RETURNING f.FollowingId
+            ), added AS (
+                INSERT INTO user_follows (FollowerId, FollowingId)
+                SELECT ?, t.AuthorId FROM target t
+                WHERE NOT EXISTS (SELECT 1 FROM removed)
+                ON CONFLICT DO NOTHING
+                RETURNING FollowingId
+            ), delta AS (
+                SELECT FollowingId, -1 AS Change FROM removed
+                UNION ALL
+                SELECT FollowingId, 1 FROM added
+            ), following AS (
+                UPDATE users u
+                SET Following = GREATEST(COALESCE(u.Following, 0) + d.Change, 0)
+                FROM delta d
+                WHERE u.AuthorId = ?
+            ), followers AS (
+                UPDATE users u
+                SET Followers = GREATEST(COALESCE(u.Followers, 0) + d.Change, 0)
+                FROM delta d
+                WHERE u.AuthorId = d.FollowingId
+            )
+            SELECT EXISTS (SELECT 1 FROM target) AS FolloweeActive,
+                   (SELECT COALESCE(SUM(Change), 0) FROM delta) AS Changed
+            """;
+
+    // 批量关注：只插入尚不存在的关注边，计数按实际新增的边调整。
+    // 参数依次为 followeeIds, followerId (排除自己), followerId (INSERT), followerId (Following 计数)
+    private static final String FOLLOW_ALL_SQL = """
+            WITH targets AS (
+                SELECT DISTINCT u.AuthorId
+                FROM users u
+                WHERE u.AuthorId = ANY(?) AND u.IsDeleted = FALSE AND u.AuthorId <> ?
+            ), added AS (
+                INSERT INTO user_follows (FollowerId, FollowingId)
+                SELECT ?, t.AuthorId FROM targets t
+                ON CONFLICT DO NOTHING
+                RETURNING FollowingId
+            ), following AS (
+                UPDATE users u
+                SET Following = COALESCE(u.Following, 0) + (SELECT COUNT(*) FROM added)
+                WHERE u.AuthorId = ? AND EXISTS (SELECT 1 FROM added)
+            ), followers AS (
+                UPDATE users u
+                SET Followers = COALESCE(u.Followers, 0) + 1
+                FROM added a
+                WHERE u.AuthorId = a.FollowingId
+            )
+            SELECT FollowingId FROM added
+            """;
+
+    // 注销账户：删除该用户作为关注者与被关注者的所有边，每个受影响用户按删除的边数一次性调整计数，
+    // 被删除用户本身的计数清零，返回软删除的行数与计数被调整的用户。参数均为 userId
+    private static final String DELETE_ACCOUNT_SQL = """
+            WITH removed AS (
+                DELETE FROM user_follows
+                WHERE FollowerId = ? OR FollowingId = ?
+                RETURNING FollowerId, FollowingId
+            ), delta AS (
+                SELECT CASE WHEN FollowerId = ? THEN FollowingId ELSE FollowerId END AS AuthorId,
+                       COUNT(*) FILTER (WHERE FollowerId = ?) AS LostFollowers,
+                       COUNT(*) FILTER (WHERE FollowingId = ?) AS LostFollowing
+                FROM removed
+                WHERE FollowerId <> FollowingId
+                GROUP BY 1
+            ), adjusted AS (
+                UPDATE users u
+                SET Followers = GREATEST(COALESCE(u.Followers, 0) - d.LostFollowers, 0),
+                    Following = GREATEST(COALESCE(u.Following, 0) - d.LostFollowing, 0)
+                FROM delta d
+                WHERE u.AuthorId = d.AuthorId
+            ), deleted AS (
+                UPDATE users
+                SET IsDeleted = TRUE, Followers = 0, Following = 0
+                WHERE AuthorId = ?
+                RETURNING AuthorId
+            )
+            SELECT (SELECT COUNT(*) FROM deleted) AS Deleted, ARRAY(SELECT AuthorId FROM delta) AS Affected
+            """;
+
+    private static final class DeletedAccount {
+
+        final int updated;
+
+        final long[] affected;
+
+        DeletedAccount(int updated, long[] affected) {
+            this.updated = updated;
+            this.affected = affected;
+        }
+    }
+
+    private static final class FollowToggle {
+
+        final boolean followeeActive;
+
+        final int changed;
+
+        FollowToggle(boolean followeeActive, int changed) {
+            this.followeeActive = followeeActive;
+            this.changed = changed;
+        }
+    }
+
     // 验证用户是否有效且活跃
     private boolean isValidActiveUser(AuthInfo userInfo) {
         try {
@@ -62,23 +189,6 @@ public class UserServiceImpl implements UserService {
         return gender.equals("Male") || gender.equals("Female");
     }
 
-    // 更新用户的关注者/关注数统计（从user_follows表动态计算）
-    private void updateUserFollowCounts(long userId) {
-        // 更新粉丝数
-        String followersSql = "SELECT COUNT(*) FROM user_follows WHERE FollowingId = ?";
-        Integer followers = jdbcTemplate.queryForObject(followersSql, Integer.class, userId);
-
-        // 更新关注数
-        String followingSql = "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ?";
-        Integer following = jdbcTemplate.queryForObject(followingSql, Integer.class, userId);
-
-        String updateSql = "UPDATE users SET Followers = ?, Following = ? WHERE AuthorId = ?";
-        jdbcTemplate.update(updateSql,
-                followers != null ? followers : 0,
-                following != null ? following : 0,
-                userId);
-    }
-
     @Override
     public long register(RegisterUserReq req) {
         // 1. 检查必要字段
@@ -130,42 +240,21 @@ public class UserServiceImpl implements UserService {
             return -1;
         }
 
-        // 5. 生成用户ID（从数据库里取最大 AuthorId + 1，避免重复）
+        // 5. 分配用户ID并插入；插入失败时把 id 退回分配器
         String insertSql = """
                     INSERT INTO users (AuthorId, AuthorName, Gender, Age, Password, IsDeleted, Followers, Following)
                     VALUES (?, ?, ?, ?, ?, FALSE, 0, 0)
                 """;
 
-        int maxAttempts = 5;
-        long authorId = -1L;
-
-        for (int attempt = 0; attempt < maxAttempts; attempt++) {
-            try {
-                Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(AuthorId), 0) FROM users", Long.class);
-                authorId = (maxId == null ? 1L : maxId + 1L);
-            } catch (Exception e) {
-                // 如果查询最大 id 失败，回退到基于时间戳的策略
-                authorId = System.currentTimeMillis() % 1000000000L;
-            }
-
-            try {
-                int result = jdbcTemplate.update(insertSql, authorId, req.getName(), gender, age, req.getPassword());
-                if (result > 0) {
-//                    log.info("User registered successfully: {} (ID: {})", req.getName(), authorId);
-                    return authorId;
-                }
-            } catch (Exception e) {
-                // 可能是主键冲突或其他并发插入导致，记录并重试
-//                log.debug("Attempt {} to insert user failed with id {}: {}", attempt + 1, authorId, e.toString());
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException ignored) {
-                }
-            }
+        long authorId = idAllocator.allocate(IdAllocator.Key.USER);
+        try {
+            jdbcTemplate.update(insertSql, authorId, req.getName(), gender, age, req.getPassword());
+            return authorId;
+        } catch (Exception e) {
+//            log.debug("Failed to insert user {} with id {}: {}", req.getName(), authorId, e.toString());
+            idAllocator.release(IdAllocator.Key.USER, authorId);
+            return -1;
         }
-
-//        log.error("Registration failed for user {} after {} attempts", req.getName(), maxAttempts);
-        return -1;
     }
 
     @Override
@@ -181,39 +270,67 @@ public class UserServiceImpl implements UserService {
             return -1;
         }
 
-        // 2. 查询用户信息
-        String sql = """
-                    SELECT AuthorId, Password, IsDeleted 
-                    FROM users 
-                    WHERE AuthorId = ?
-                """;
-
+        // 2. 查询用户信息（优先命中凭据缓存）
+        AuthCache.Credential user;
         try {
-            Map<String, Object> user = jdbcTemplate.queryForMap(sql, auth.getAuthorId());
-
-            // 3. 检查用户是否被删除
-            Boolean isDeleted = (Boolean) user.get("IsDeleted");
-            if (isDeleted != null && isDeleted) {
-//                log.warn("Login failed: user is soft-deleted: {}", auth.getAuthorId());
-                return -1;
-            }
-
-            // 4. 验证密码
-            String storedPassword = (String) user.get("Password");
-            if (storedPassword != null && storedPassword.equals(auth.getPassword())) {
-//                log.info("User logged in successfully: {}", auth.getAuthorId());
-                return auth.getAuthorId();
-            } else {
-//                log.warn("Login failed: password mismatch for user: {}", auth.getAuthorId());
-                return -1;
-            }
-        } catch (EmptyResultDataAccessException e) {
-//            log.warn("Login failed: user not found: {}", auth.getAuthorId());
-            return -1;
+            user = authCache.get(auth.getAuthorId(), this::loadCredential);
         } catch (Exception e) {
 //            log.error("Login error for user: {}", auth.getAuthorId(), e);
             return -1;
         }
+        if (user == null) {
+//            log.warn("Login failed: user not found: {}", auth.getAuthorId());
+            return -1;
+        }
+
+        // 3. 检查用户是否被删除
+        if (user.isDeleted()) {
+//            log.warn("Login failed: user is soft-deleted: {}", auth.getAuthorId());
+            return -1;
+        }
+
+        // 4. 验证密码
+        if (user.matches(auth.getPassword())) {
+//            log.info("User logged in successfully: {}", auth.getAuthorId());
+            return auth.getAuthorId();
+        } else {
+//            log.warn("Login failed: password mismatch for user: {}", auth.getAuthorId());
+            return -1;
+        }
+    }
+
+    /**
+     * Hit/miss statistics of the {@link AuthCache} behind {@link #login}, including the {@code users} round trips saved.
+     */
+    public Map<String, Object> getAuthCacheStats() {
+        return authCache.getStats();
+    }
+
+    /**
+     * Size of the materialized {@link FeedTimeline} behind {@link #feed}, see {@link FeedTimeline#getStats()}.
+     */
+    public Map<String, Object> getTimelineStats() {
+        return feedTimeline.getStats();
+    }
+
+    /**
+     * Rebuilds the {@link FeedTimeline}, e.g. to re-evaluate which authors are read on demand.
+     */
+    public Map<String, Object> rebuildTimeline() {
+        return feedTimeline.rebuild();
+    }
+
+    // 从 users 表读取登录所需的凭据；用户不存在时返回 null
+    private AuthCache.Credential loadCredential(long authorId) {
+        String sql = """
+                    SELECT Password, IsDeleted
+                    FROM users
+                    WHERE AuthorId = ?
+                """;
+        List<AuthCache.Credential> found = jdbcTemplate.query(sql,
+                (rs, rowNum) -> AuthCache.Credential.of(rs.getString("Password"), rs.getBoolean("IsDeleted")),
+                authorId);
+        return found.isEmpty() ? null : found.get(0);
     }
 
     @Override
@@ -240,47 +357,18 @@ public class UserServiceImpl implements UserService {
             throw new IllegalArgumentException("Target user does not exist or is already inactive");
         }
 
-        // 4. 在删除关系之前先收集受影响的用户（粉丝与被关注的用户），以便后续更新统计
-        String followersListSql = "SELECT DISTINCT FollowerId FROM user_follows WHERE FollowingId = ?";
-        List<Long> followersList = jdbcTemplate.query(followersListSql, (rs, rn) -> rs.getLong("FollowerId"), userId);
-
-        String followingListSql = "SELECT DISTINCT FollowingId FROM user_follows WHERE FollowerId = ?";
-        List<Long> followingList = jdbcTemplate.query(followingListSql, (rs, rn) -> rs.getLong("FollowingId"), userId);
-
-        // 删除所有与该用户相关的关注关系（作为发起者或被关注者）
-        String deleteRelationsSql = "DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ?";
-        jdbcTemplate.update(deleteRelationsSql, userId, userId);
-
-        // 5. 软删除用户
-        String softDeleteSql = "UPDATE users SET IsDeleted = TRUE WHERE AuthorId = ?";
-        int updated = jdbcTemplate.update(softDeleteSql, userId);
+        // 4. 一条语句删除该用户的全部关注关系、按删除的边调整对方计数，并软删除用户
+        DeletedAccount deleted = jdbcTemplate.queryForObject(DELETE_ACCOUNT_SQL, (rs, rowNum) ->
+                        new DeletedAccount(rs.getInt("Deleted"),
+                                Arrays.stream((Long[]) rs.getArray("Affected").getArray()).mapToLong(Long::longValue).toArray()),
+                userId, userId, userId, userId, userId, userId);
+        feedTimeline.accountDeleted(userId);
+        // 已缓存的凭据仍标记为活跃，必须丢弃
+        authCache.invalidate(userId);
+        followRatioBoard.changed(userId);
+        followRatioBoard.changed(deleted.affected);
 
-        if (updated > 0) {
-//            log.info("User account soft-deleted: {}", userId);
-
-            // 6. 更新受影响用户的关注统计（对收集到的 followersList 与 followingList 做刷新）
-            // 使用 updateUserFollowCounts 单个刷新，保持逻辑集中。
-            Set<Long> affected = new HashSet<>();
-            if (followersList != null) affected.addAll(followersList);
-            if (followingList != null) affected.addAll(followingList);
-
-            for (Long affectedUserId : affected) {
-                try {
-                    updateUserFollowCounts(affectedUserId);
-                } catch (Exception e) {
-//                    log.warn("Failed to update follow counts for user {} after deleting account {}: {}", affectedUserId, userId, e.getMessage());
-                }
-            }
-
-            // 将被软删除用户的统计清零（更清晰地表示已删除状态）
-            String zeroSql = "UPDATE users SET Followers = 0, Following = 0 WHERE AuthorId = ?";
-            jdbcTemplate.update(zeroSql, userId);
-
-            return true;
-        } else {
-//            log.warn("Soft delete failed for user: {}", userId);
-            return false;
-        }
+        return deleted.updated > 0;
     }
 
     @Override
@@ -297,76 +385,62 @@ public class UserServiceImpl implements UserService {
             throw new SecurityException("Follower is invalid or inactive");
         }
 
-        // 2. 验证被关注者是否存在
-        try {
-            String sql = "SELECT COUNT(*) FROM users WHERE AuthorId = ? AND IsDeleted = FALSE";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, followeeId);
-            if (count == null || count != 1) {
-                throw new SecurityException("Followee does not exist or is inactive");
-            }
-        } catch (Exception e) {
-            //log.debug("Error validating user: {}", followeeId, e);
-            throw new SecurityException("Followee does not exist or is inactive");
-
-        }
-
-
-        // 3. 检查是否关注自己
+        // 2. 检查是否关注自己
         if (followerId == followeeId) {
             throw new SecurityException("Users cannot follow themselves");
         }
 
-        // 4. 检查当前关注状态
-        String checkSql = "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ? AND FollowingId = ?";
-        Integer isFollowing = jdbcTemplate.queryForObject(checkSql, Integer.class, followerId, followeeId);
-
-        boolean result = false;
-        // true: we just performed a follow (insert); false: we performed an unfollow (delete)
-        Boolean didFollow = null;
-
-        if (isFollowing != null && isFollowing > 0) {
-            // 已经关注，执行取消关注
-            String unfollowSql = "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?";
-            int deleted = jdbcTemplate.update(unfollowSql, followerId, followeeId);
-
-            if (deleted > 0) {
-                result = true;
-                didFollow = false;
-//                log.info("User {} unfollowed user {}", followerId, followeeId);
-            }
-        } else {
-            // 未关注，执行关注
-            String followSql = "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)";
-            try {
-                jdbcTemplate.update(followSql, followerId, followeeId);
-                result = true;
-                didFollow = true;
-//                log.info("User {} followed user {}", followerId, followeeId);
-            } catch (Exception e) {
-//                log.error("Failed to follow user {} -> {}", followerId, followeeId, e);
-                return false;
-            }
+        // 3. 一条语句内完成：校验被关注者、删除或插入关注边、调整双方计数
+        FollowToggle toggle = jdbcTemplate.queryForObject(FOLLOW_TOGGLE_SQL,
+                (rs, rowNum) -> new FollowToggle(rs.getBoolean("FolloweeActive"), rs.getInt("Changed")),
+                followeeId, followerId, followerId, followerId);
+        if (toggle == null || !toggle.followeeActive) {
+            throw new SecurityException("Followee does not exist or is inactive");
         }
-
-
-        // 5. 更新双方的关注统计
-        if (result && didFollow != null) {
-            if (didFollow) {
-                // increment follower's Following and followee's Followers
-                String incFollowingSql = "UPDATE users SET Following = COALESCE(Following, 0) + 1 WHERE AuthorId = ?";
-                String incFollowersSql = "UPDATE users SET Followers = COALESCE(Followers, 0) + 1 WHERE AuthorId = ?";
-                jdbcTemplate.update(incFollowingSql, followerId);
-                jdbcTemplate.update(incFollowersSql, followeeId);
-            } else {
-                // decrement counts but never below zero
-                String decFollowingSql = "UPDATE users SET Following = GREATEST(COALESCE(Following, 0) - 1, 0) WHERE AuthorId = ?";
-                String decFollowersSql = "UPDATE users SET Followers = GREATEST(COALESCE(Followers, 0) - 1, 0) WHERE AuthorId = ?";
-                jdbcTemplate.update(decFollowingSql, followerId);
-                jdbcTemplate.update(decFollowersSql, followeeId);
-            }
+        // changed：1 为关注，-1 为取消关注；并发插入了同一条关注边时为 0，本次既没有删除也没有插入
+        if (toggle.changed > 0) {
+            feedTimeline.followed(followerId, followeeId);
+        } else if (toggle.changed < 0) {
+            feedTimeline.unfollowed(followerId, followeeId);
         }
+        if (toggle.changed != 0) {
+            followRatioBoard.changed(followerId, followeeId);
+        }
+        return toggle.changed != 0;
+    }
 
-        return result;
+    /**
+     * Makes {@code auth}'s user follow every user in {@code followeeIds} in a single statement, for bulk social-graph
+     * operations such as importing a contact list.
+     * <p>
+     * Unlike {@link #follow}, this never unfollows: users that are already followed, do not exist, are deleted,
+     * repeated in the array, or are the caller themselves are skipped. Both sides' counters are adjusted for the new
+     * edges only.
+     *
+     * @return the number of users newly followed
+     * @throws SecurityException if {@code auth} is null, invalid or inactive
+     */
+    @Transactional
+    public int followAll(AuthInfo auth, long[] followeeIds) {
+        if (auth == null) {
+            throw new SecurityException("AuthInfo cannot be null");
+        }
+        if (!isValidActiveUser(auth)) {
+            throw new SecurityException("Follower is invalid or inactive");
+        }
+        if (followeeIds == null || followeeIds.length == 0) {
+            return 0;
+        }
+        long followerId = auth.getAuthorId();
+        List<Long> added = jdbcTemplate.queryForList(FOLLOW_ALL_SQL, Long.class,
+                followeeIds, followerId, followerId, followerId);
+        long[] addedIds = added.stream().mapToLong(Long::longValue).toArray();
+        feedTimeline.followed(followerId, addedIds);
+        if (addedIds.length > 0) {
+            followRatioBoard.changed(followerId);
+            followRatioBoard.changed(addedIds);
+        }
+        return added.size();
     }
 
     @Override
@@ -500,6 +574,66 @@ public class UserServiceImpl implements UserService {
         }
     }
 
+    // feed 与 feedAfter 共用的 FeedItem 映射（保持 null 语义）
+    private final RowMapper<FeedItem> feedItemRowMapper = new RowMapper<FeedItem>() {
+        @Override
+        public FeedItem mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Timestamp ts = rs.getTimestamp("DatePublished");
+            Instant datePublished = null;
+            if (ts != null) {
+                // Treat the DB timestamp as a wall-clock (no timezone compensation):
+                // convert to LocalDateTime and then to Instant using the system default zone.
+                // This preserves the literal date/time stored in DB instead of shifting by the JVM/driver timezone.
+                datePublished = ts.toLocalDateTime().atZone(ZoneId.of("UTC")).toInstant();
+            }
+
+            Double aggregatedRating = null;
+            Object aggObj = null;
+            try {
+                aggObj = rs.getObject("AggregatedRating");
+            } catch (SQLException ignore) {
+            }
+            if (aggObj != null) {
+                if (aggObj instanceof Number) {
+                    aggregatedRating = ((Number) aggObj).doubleValue();
+                } else {
+                    try {
+                        aggregatedRating = Double.parseDouble(String.valueOf(aggObj));
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
+
+            Integer reviewCount = null;
+            Object revObj = null;
+            try {
+                revObj = rs.getObject("ReviewCount");
+            } catch (SQLException ignore) {
+            }
+            if (revObj != null) {
+                if (revObj instanceof Number) {
+                    reviewCount = ((Number) revObj).intValue();
+                } else {
+                    try {
+                        reviewCount = Integer.parseInt(String.valueOf(revObj));
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
+
+//                log.debug("FeedItem DatePublished: init:{}, instant{}", ts.getTime(), datePublished.);
+            return FeedItem.builder()
+                    .recipeId(rs.getLong("RecipeId"))
+                    .name(rs.getString("Name"))
+                    .authorId(rs.getLong("AuthorId"))
+                    .authorName(rs.getString("AuthorName"))
+                    .datePublished(datePublished)
+                    .aggregatedRating(aggregatedRating)
+                    .reviewCount(reviewCount)
+                    .build();
+        }
+    };
+
     @Override
     public PageResult<FeedItem> feed(AuthInfo auth, int page, int size, String category) {
         // 1. 验证用户身份
@@ -520,6 +654,24 @@ public class UserServiceImpl implements UserService {
 
         int offset = (page - 1) * size;
 
+        // 启用时间线时，计数与分页都是对该用户时间线的索引范围读取
+        if (feedTimeline.isReady()) {
+            String filter = category != null && !category.trim().isEmpty() ? category : null;
+            long total = feedTimeline.countFeed(userId, filter);
+            List<FeedItem> items = Collections.emptyList();
+            if (total > 0) {
+                List<Object> params = new ArrayList<>();
+                String sql = feedTimeline.feedPageSql(params, userId, filter, null, size, offset);
+                items = jdbcTemplate.query(sql, feedItemRowMapper, params.toArray());
+            }
+            return PageResult.<FeedItem>builder()
+                    .items(items)
+                    .page(page)
+                    .size(size)
+                    .total(total)
+                    .build();
+        }
+
         // 3. 构建查询
         StringBuilder sqlBuilder = new StringBuilder();
         List<Object> params = new ArrayList<>();
@@ -573,64 +725,7 @@ public class UserServiceImpl implements UserService {
         params.add(offset);
 
         // 6. 执行查询（保持 null 语义）
-        List<FeedItem> feedItems = jdbcTemplate.query(sqlBuilder.toString(), new RowMapper<FeedItem>() {
-            @Override
-            public FeedItem mapRow(ResultSet rs, int rowNum) throws SQLException {
-                Timestamp ts = rs.getTimestamp("DatePublished");
-                Instant datePublished = null;
-                if (ts != null) {
-                    // Treat the DB timestamp as a wall-clock (no timezone compensation):
-                    // convert to LocalDateTime and then to Instant using the system default zone.
-                    // This preserves the literal date/time stored in DB instead of shifting by the JVM/driver timezone.
-                    datePublished = ts.toLocalDateTime().atZone(ZoneId.of("UTC")).toInstant();
-                }
-
-                Double aggregatedRating = null;
-                Object aggObj = null;
-                try {
-                    aggObj = rs.getObject("AggregatedRating");
-                } catch (SQLException ignore) {
-                }
-                if (aggObj != null) {
-                    if (aggObj instanceof Number) {
-                        aggregatedRating = ((Number) aggObj).doubleValue();
-                    } else {
-                        try {
-                            aggregatedRating = Double.parseDouble(String.valueOf(aggObj));
-                        } catch (Exception ignore) {
-                        }
-                    }
-                }
-
-                Integer reviewCount = null;
-                Object revObj = null;
-                try {
-                    revObj = rs.getObject("ReviewCount");
-                } catch (SQLException ignore) {
-                }
-                if (revObj != null) {
-                    if (revObj instanceof Number) {
-                        reviewCount = ((Number) revObj).intValue();
-                    } else {
-                        try {
-                            reviewCount = Integer.parseInt(String.valueOf(revObj));
-                        } catch (Exception ignore) {
-                        }
-                    }
-                }
-
-//                log.debug("FeedItem DatePublished: init:{}, instant{}", ts.getTime(), datePublished.);
-                return FeedItem.builder()
-                        .recipeId(rs.getLong("RecipeId"))
-                        .name(rs.getString("Name"))
-                        .authorId(rs.getLong("AuthorId"))
-                        .authorName(rs.getString("AuthorName"))
-                        .datePublished(datePublished)
-                        .aggregatedRating(aggregatedRating)
-                        .reviewCount(reviewCount)
-                        .build();
-            }
-        }, params.toArray());
+        List<FeedItem> feedItems = jdbcTemplate.query(sqlBuilder.toString(), feedItemRowMapper, params.toArray());
 
         // 7. 构建分页结果
         return PageResult.<FeedItem>builder()
@@ -641,75 +736,117 @@ public class UserServiceImpl implements UserService {
                 .build();
     }
 
-    @Override
-    public Map<String, Object> getUserWithHighestFollowRatio() {
-        // 使用SQL直接计算比率并找出最高的
-        String sql = """
-                    WITH user_stats AS (
-                        SELECT 
-                            u.AuthorId,
-                            u.AuthorName,
-                            COALESCE(followers.count, 0) AS follower_count,
-                            COALESCE(following.count, 0) AS following_count
-                        FROM users u
-                        LEFT JOIN (
-                            SELECT FollowingId, COUNT(*) as count
-                            FROM user_follows
-                            GROUP BY FollowingId
-                        ) followers ON u.AuthorId = followers.FollowingId
-                        LEFT JOIN (
-                            SELECT FollowerId, COUNT(*) as count
-                            FROM user_follows
-                            GROUP BY FollowerId
-                        ) following ON u.AuthorId = following.FollowerId
-                        WHERE u.IsDeleted = FALSE
-                    ),
-                    eligible_users AS (
-                        SELECT 
-                            AuthorId,
-                            AuthorName,
-                            follower_count,
-                            following_count,
-                            CASE 
-                                WHEN following_count > 0 THEN follower_count * 1.0 / following_count
-                                ELSE NULL
-                            END AS ratio
-                        FROM user_stats
-                        WHERE following_count > 0
+    /**
+     * Keyset-paginated variant of {@link #feed}: the same recipes in the same order
+     * ({@code DatePublished DESC, RecipeId DESC}), but the next page is addressed by
+     * {@link CursorPage#getNextCursor()} instead of an offset, so no page reads the rows of the pages before it.
+     * <p>
+     * The cursor becomes a row comparison on {@code (DatePublished, RecipeId)}. The usual plan walks the
+     * {@code recipes (DatePublished, RecipeId)} index backwards from the cursor and keeps the recipes of followed
+     * authors, so a page reads about {@code size * (all recipes / recipes in this feed)} index entries at any depth:
+     * cheap when the user follows many authors, more when the feed is a small share of all recipes. A per-followee
+     * merge ({@code LATERAL} seeks on {@code (AuthorId, DatePublished, RecipeId)}) was measured instead and was
+     * slower for users following many authors, since it always reads {@code size + 1} entries per followee.
+     *
+     * @param cursor {@code null} for the first page, otherwise the cursor returned with the previous page
+     * @throws SecurityException        if the user is invalid or inactive
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public CursorPage<FeedItem> feedAfter(AuthInfo auth, String cursor, int size, String category) {
+        if (auth == null) {
+            throw new SecurityException("AuthInfo cannot be null");
+        }
+        if (!isValidActiveUser(auth)) {
+            throw new SecurityException("User is invalid or inactive");
+        }
+
+        // 与 feed 相同的分页大小范围
+        if (size < 1) size = 1;
+        if (size > 200) size = 200;
+
+        KeysetCursor after = KeysetCursor.decode(cursor, FEED_CURSOR);
+        if (feedTimeline.isReady()) {
+            String filter = category != null && !category.trim().isEmpty() ? category : null;
+            List<Object> params = new ArrayList<>();
+            String sql = feedTimeline.feedPageSql(params, auth.getAuthorId(), filter, after, size + 1, 0);
+            return KeysetCursor.fetch(jdbcTemplate, sql, params, size, FEED_CURSOR,
+                    "DatePublished", "RecipeId", feedItemRowMapper);
+        }
+
+        StringBuilder sqlBuilder = new StringBuilder("""
+                    SELECT
+                        r.RecipeId,
+                        r.Name,
+                        r.AuthorId,
+                        u.AuthorName,
+                        r.DatePublished,
+                        r.AggregatedRating,
+                        r.ReviewCount
+                    FROM recipes r
+                    JOIN users u ON r.AuthorId = u.AuthorId
+                    WHERE r.AuthorId IN (
+                        SELECT FollowingId
+                        FROM user_follows
+                        WHERE FollowerId = ?
                     )
-                    SELECT 
-                        AuthorId,
-                        AuthorName,
-                        follower_count,
-                        following_count,
-                        ratio
-                    FROM eligible_users
-                    WHERE ratio IS NOT NULL
-                    ORDER BY ratio DESC, AuthorId ASC
-                    LIMIT 1
-                """;
+                    AND u.IsDeleted = FALSE
+                """);
+        List<Object> params = new ArrayList<>();
+        params.add(auth.getAuthorId());
 
-        try {
-            Map<String, Object> result = jdbcTemplate.queryForMap(sql);
+        if (category != null && !category.trim().isEmpty()) {
+            sqlBuilder.append(" AND r.RecipeCategory = ?");
+            params.add(category);
+        }
 
-            // 格式化返回结果
-            Map<String, Object> formattedResult = new HashMap<>();
-            formattedResult.put("AuthorId", result.get("authorid"));
-            formattedResult.put("AuthorName", result.get("authorname"));
-            formattedResult.put("Ratio", ((Number) result.get("ratio")).doubleValue());
+        if (after != null) {
+            after.appendSeek(sqlBuilder, params, "r.DatePublished", true, "r.RecipeId");
+        }
+        sqlBuilder.append(" ORDER BY r.DatePublished DESC, r.RecipeId DESC LIMIT ?");
+        params.add(size + 1);
 
-            return formattedResult;
+        return KeysetCursor.fetch(jdbcTemplate, sqlBuilder.toString(), params, size, FEED_CURSOR,
+                "DatePublished", "RecipeId", feedItemRowMapper);
+    }
 
-        } catch (EmptyResultDataAccessException e) {
-            // 没有符合条件的用户
-//            log.info("No eligible user found with following_count > 0");
-            return null;
+    @Override
+    public Map<String, Object> getUserWithHighestFollowRatio() {
+        // 榜首直接取排行榜的第一项
+        try {
+            List<Map<String, Object>> top = listHighestFollowRatios(1);
+            // 没有符合条件的用户（所有活跃用户关注数均为 0）
+            return top.isEmpty() ? null : top.get(0);
         } catch (Exception e) {
 //            log.error("Error getting user with highest follow ratio", e);
             return null;
         }
     }
 
+    /**
+     * The {@code limit} active users with the highest follower/following ratio, in the order and with the fields of
+     * {@link #getUserWithHighestFollowRatio()}, taken from the {@link FollowRatioBoard} kept on the Followers/Following
+     * counters instead of aggregating {@code user_follows}.
+     */
+    public List<Map<String, Object>> listHighestFollowRatios(int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        return followRatioBoard.top(limit);
+    }
+
+    public Map<String, Object> getFollowRatioBoardStats() {
+        return followRatioBoard.getStats();
+    }
+
+    /**
+     * Repairs Followers/Following counters that disagree with {@code user_follows}, see {@link FollowRatioBoard#reconcile()}.
+     *
+     * @return the ids of the repaired users
+     */
+    public List<Long> reconcileFollowCounters() {
+        return followRatioBoard.reconcile();
+    }
+
     // 前端要求，增加查询特定用户的发布食谱数量
     public long getUserRecipeCount(long userId) {
         try {
@@ -0,0 +1,109 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthCacheTest {
+
+    private final AuthCache cache = new AuthCache(60_000, 100);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void credentialMatchesOnlyTheStoredPassword() {
+        AuthCache.Credential credential = AuthCache.Credential.of("secret", false);
+
+        assertTrue(credential.matches("secret"));
+        assertFalse(credential.matches("Secret"));
+        assertFalse(credential.matches(null));
+        assertFalse(AuthCache.Credential.of(null, false).matches("secret"));
+    }
+
+    @Test
+    void secondLoginIsServedFromTheCache() {
+        cache.get(1, id -> load("pw", false));
+        AuthCache.Credential cached = cache.get(1, id -> load("other", false));
+
+        assertTrue(cached.matches("pw"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void missingUserIsNotCached() {
+        assertNull(cache.get(1, id -> null));
+        assertTrue(cache.get(1, id -> load("pw", false)).matches("pw"));
+    }
+
+    // 注销账户的事务内，其他登录在回滚前仍可能重新缓存“活跃”的旧凭据；事务结束时必须再删一次
+    @Test
+    void credentialReCachedDuringARolledBackTransactionIsDroppedAgain() {
+        cache.get(1, id -> load("pw", false));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidate(1);
+        assertFalse(cache.get(1, id -> load("pw", false)).isDeleted());
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertTrue(cache.get(1, id -> load("pw", true)).isDeleted());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void clearInsideATransactionRepeatsAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.clear();
+        cache.get(1, id -> load("old", false));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertTrue(cache.get(1, id -> load("new", false)).matches("new"));
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() {
+        cache.get(1, id -> {
+            cache.invalidate(id);
+            return load("stale", false);
+        });
+
+        assertTrue(cache.get(1, id -> load("fresh", false)).matches("fresh"));
+    }
+
+    @Test
+    void expiredCredentialIsLoadedAgain() throws InterruptedException {
+        AuthCache shortLived = new AuthCache(1, 100);
+        shortLived.get(1, id -> load("old", false));
+        Thread.sleep(5);
+
+        assertTrue(shortLived.get(1, id -> load("new", false)).matches("new"));
+        assertEquals(1L, shortLived.getStats().get("expirations"));
+    }
+
+    private AuthCache.Credential load(String password, boolean deleted) {
+        loads.incrementAndGet();
+        return AuthCache.Credential.of(password, deleted);
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+}
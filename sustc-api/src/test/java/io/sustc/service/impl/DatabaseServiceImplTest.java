@@ -0,0 +1,147 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringJUnitConfig(TestDatabaseConfig.class)
+@EnabledIfSystemProperty(named = TestDatabaseConfig.URL, matches = ".+")
+class DatabaseServiceImplTest {
+
+    private static final String[] TABLES = {"users", "user_follows", "recipes", "recipe_ingredients", "reviews", "review_likes"};
+
+    @Autowired
+    private DatabaseServiceImpl databaseService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 全量导入旧快照再应用增量，与直接全量导入新快照得到的各表内容必须完全相同
+    @Test
+    void deltaOnTheOldSnapshotMatchesAFullImportOfTheNewOne() {
+        databaseService.importData(List.of(
+                        review(100, 10, 2, 4, 3, 4), review(101, 10, 3, 5, 2),
+                        review(102, 11, 1, 3), review(103, 12, 4, 2, 1)),
+                List.of(
+                        user(1, false, 2, 3), user(2, false, 1), user(3, false, 1, 4),
+                        user(4, false, 5), user(5, false, 1), user(6, false, 1)),
+                List.of(
+                        recipe(10, 1, 4.5f, 2, "a", "b"), recipe(11, 2, 3, 1, "c"), recipe(12, 3, 2, 1, "a")));
+
+        // 1 改为关注 2、6，而 2、5、6 关注 1 的边属于增量之外的用户，必须保留；3 改为关注 5；7 是新用户；
+        // 4 注销：关注关系全部删除，其评论与点赞保留；删除食谱 11（连同评论 102）与评论 101
+        Map<String, Object> result = databaseService.importDelta(
+                List.of(review(100, 10, 2, 4, 3), review(104, 12, 5, 4, 1, 7)),
+                List.of(user(1, false, 2, 6), user(3, false, 5), user(7, false, 1)),
+                List.of(recipe(12, 3, 3, 2, "a", "d"), recipe(13, 7, 0, 0, "e")),
+                new long[]{101}, new long[]{4}, new long[]{11});
+        assertEquals(0, result.get("droppedFollows"));
+        Map<String, List<Map<String, Object>>> afterDelta = dump();
+
+        databaseService.importData(List.of(
+                        review(100, 10, 2, 4, 3), review(103, 12, 4, 2, 1), review(104, 12, 5, 4, 1, 7)),
+                List.of(
+                        user(1, false, 2, 6), user(2, false, 1), user(3, false, 5),
+                        user(4, true), user(5, false, 1), user(6, false, 1), user(7, false, 1)),
+                List.of(
+                        recipe(10, 1, 4, 1, "a", "b"), recipe(12, 3, 3, 2, "a", "d"), recipe(13, 7, 0, 0, "e")));
+        Map<String, List<Map<String, Object>>> fullImport = dump();
+
+        for (String table : TABLES) {
+            assertEquals(fullImport.get(table), afterDelta.get(table), table);
+        }
+    }
+
+    @Test
+    void followsOfMissingUsersAreReportedAndSkipped() {
+        TestDatabaseConfig.importUsers(databaseService, user(1, false), user(2, false));
+
+        Map<String, Object> result = databaseService.importDelta(List.of(), List.of(user(1, false, 2, 99)), List.of(),
+                new long[0], new long[0], new long[0]);
+
+        assertEquals(1, result.get("droppedFollows"));
+        assertEquals(List.of(2L), jdbcTemplate.queryForList(
+                "SELECT FollowingId FROM user_follows WHERE FollowerId = 1", Long.class));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+    }
+
+    @Test
+    void deletedUserIsSoftDeleted() {
+        TestDatabaseConfig.importUsers(databaseService, user(1, false, 2), user(2, false, 1));
+
+        databaseService.importDelta(List.of(), List.of(), List.of(), new long[0], new long[]{2}, new long[0]);
+
+        assertTrue(jdbcTemplate.queryForObject("SELECT IsDeleted FROM users WHERE AuthorId = 2", Boolean.class));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_follows", Long.class));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+    }
+
+    // List 入口没有可靠的输入指纹：失败后不保留暂存表与导入日志，修正后的重试从头导入
+    @Test
+    void failedListImportLeavesNoStagingTablesBehind() {
+        TestDatabaseConfig.importUsers(databaseService, user(1, false));
+
+        assertThrows(RuntimeException.class, () -> databaseService.importData(
+                List.of(), List.of(user(1, false), user(2, false)), List.of(recipe(10, 99, 0, 0, "a"))));
+
+        assertNull(jdbcTemplate.queryForObject("SELECT to_regclass('users_staging')::text", String.class));
+        assertNull(jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, ImportJournal.TABLE));
+        assertEquals(List.of(1L), jdbcTemplate.queryForList("SELECT AuthorId FROM users", Long.class));
+
+        databaseService.importData(List.of(), List.of(user(1, false), user(2, false)), List.of(recipe(10, 2, 0, 0, "a")));
+        assertEquals(List.of(1L, 2L), jdbcTemplate.queryForList("SELECT AuthorId FROM users ORDER BY AuthorId", Long.class));
+        assertEquals(List.of(2L), jdbcTemplate.queryForList("SELECT AuthorId FROM recipes", Long.class));
+    }
+
+    private Map<String, List<Map<String, Object>>> dump() {
+        Map<String, List<Map<String, Object>>> tables = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            tables.put(table, jdbcTemplate.queryForList("SELECT * FROM " + table + " ORDER BY 1, 2"));
+        }
+        return tables;
+    }
+
+    private static UserRecord user(long authorId, boolean deleted, long... followingUsers) {
+        return TestDatabaseConfig.user(authorId, deleted, followingUsers);
+    }
+
+    private static RecipeRecord recipe(long recipeId, long authorId, float rating, int reviews, String... parts) {
+        return RecipeRecord.builder()
+                .RecipeId(recipeId)
+                .name("recipe" + recipeId)
+                .authorId(authorId)
+                .datePublished(Timestamp.valueOf("2024-01-01 00:00:00"))
+                .recipeIngredientParts(parts)
+                .aggregatedRating(rating)
+                .reviewCount(reviews)
+                .build();
+    }
+
+    private static ReviewRecord review(long reviewId, long recipeId, long authorId, int rating, long... likes) {
+        return ReviewRecord.builder()
+                .reviewId(reviewId)
+                .recipeId(recipeId)
+                .authorId(authorId)
+                .rating(rating)
+                .review("review" + reviewId)
+                .dateSubmitted(Timestamp.valueOf("2024-02-01 00:00:00"))
+                .dateModified(Timestamp.valueOf("2024-02-02 00:00:00"))
+                .likes(likes)
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.AuthInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringJUnitConfig(TestDatabaseConfig.class)
+@EnabledIfSystemProperty(named = TestDatabaseConfig.URL, matches = ".+")
+class FollowRatioBoardTest {
+
+    @Autowired
+    private DatabaseServiceImpl databaseService;
+
+    @Autowired
+    private UserServiceImpl userService;
+
+    @Autowired
+    private FollowRatioBoard followRatioBoard;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 比值：1 为 2/1，2、4、5 均为 1/1，3 为 0/1；6 不关注任何人，7 已注销，均不上榜
+    @BeforeEach
+    void importUsers() {
+        TestDatabaseConfig.importUsers(databaseService,
+                TestDatabaseConfig.user(1, false, 2),
+                TestDatabaseConfig.user(2, false, 1),
+                TestDatabaseConfig.user(3, false, 1),
+                TestDatabaseConfig.user(4, false, 5),
+                TestDatabaseConfig.user(5, false, 4),
+                TestDatabaseConfig.user(6, false),
+                TestDatabaseConfig.user(7, true, 6));
+    }
+
+    @Test
+    void ordersByRatioThenAuthorId() {
+        assertEquals(List.of(1L, 2L, 4L, 5L, 3L), topIds(10));
+        assertEquals(List.of(1L, 2L), topIds(2));
+        assertEquals(expectedOrder(), topIds(10));
+        assertEquals(2.0, (Double) followRatioBoard.top(1).get(0).get("Ratio"));
+    }
+
+    @Test
+    void followsMoveOnlyTheUsersInvolved() {
+        topIds(10);
+
+        // 5 变为 2/1，与 1 并列；3 的比值仍为 0
+        userService.follow(new AuthInfo(3, "pw3"), 5);
+        assertEquals(List.of(1L, 5L, 2L, 4L, 3L), topIds(10));
+
+        // 6 开始关注后上榜：已注销的 7 仍关注着 6，比值为 1/1；1 变为 3/1
+        userService.follow(new AuthInfo(6, "pw6"), 1);
+        assertEquals(List.of(1L, 5L, 2L, 4L, 6L, 3L), topIds(10));
+        assertEquals(expectedOrder(), topIds(10));
+    }
+
+    @Test
+    void deletedAccountLeavesTheBoard() {
+        topIds(10);
+
+        userService.deleteAccount(new AuthInfo(1, "pw1"), 1);
+        // 2、3 不再关注任何人；4、5 不受影响
+        assertEquals(List.of(4L, 5L), topIds(10));
+        assertEquals(expectedOrder(), topIds(10));
+    }
+
+    private List<Long> topIds(int limit) {
+        return followRatioBoard.top(limit).stream()
+                .map(user -> (Long) user.get("AuthorId"))
+                .collect(Collectors.toList());
+    }
+
+    // 按原先 SQL 实现的排序重新计算
+    private List<Long> expectedOrder() {
+        return jdbcTemplate.queryForList("""
+                SELECT AuthorId FROM users
+                WHERE IsDeleted = FALSE AND Following > 0
+                ORDER BY COALESCE(Followers, 0) * 1.0 / Following DESC, AuthorId
+                """, Long.class);
+    }
+}
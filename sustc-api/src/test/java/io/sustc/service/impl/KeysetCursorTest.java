@@ -0,0 +1,134 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.CursorPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    private static final String TAG = KeysetCursor.tag("searchRecipes", "date_desc");
+
+    @Test
+    void nullCursorIsTheFirstPage() {
+        assertNull(KeysetCursor.decode(null, TAG));
+    }
+
+    @Test
+    void timestampKeyRoundTrips() {
+        LocalDateTime key = LocalDateTime.of(2023, 4, 5, 6, 7, 8, 123_000_000);
+        String cursor = KeysetCursor.encode(TAG, Timestamp.valueOf(key), 42);
+
+        assertEquals(List.of(key, 42L), seekParams(KeysetCursor.decode(cursor, TAG), true));
+    }
+
+    @Test
+    void decimalKeyRoundTrips() {
+        String cursor = KeysetCursor.encode(TAG, new BigDecimal("1234.50"), 7);
+
+        assertEquals(List.of(new BigDecimal("1234.50"), 7L), seekParams(KeysetCursor.decode(cursor, TAG), true));
+    }
+
+    @Test
+    void nullKeyRoundTrips() {
+        String cursor = KeysetCursor.encode(TAG, null, 9);
+
+        assertEquals(List.of(9L), seekParams(KeysetCursor.decode(cursor, TAG), true));
+    }
+
+    @Test
+    void cursorOfAnotherListingIsRejected() {
+        String cursor = KeysetCursor.encode(KeysetCursor.tag("listByRecipe", "date_desc"), null, 9);
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(cursor, TAG));
+        assertThrows(IllegalArgumentException.class,
+                () -> KeysetCursor.decode(cursor, KeysetCursor.tag("searchRecipes", "rating_desc")));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not a cursor!", TAG));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(raw(TAG + "|X1|2"), TAG));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(raw(TAG + "|T2023-13-01T00:00|2"), TAG));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(raw(TAG + "|-|abc"), TAG));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(raw(TAG + "|-"), TAG));
+    }
+
+    @Test
+    void unsupportedKeyTypeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.encode(TAG, "text", 1));
+    }
+
+    // 分页拼接的结果必须与一次性排序完全一致：包括 NULL 键、重复键与页边界落在重复键中间的情况
+    @Test
+    @EnabledIfSystemProperty(named = TestDatabaseConfig.URL, matches = ".+")
+    void pagesFollowTheFullOrder() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(System.getProperty(TestDatabaseConfig.URL),
+                System.getProperty("sustc.test.username", "sustc"), System.getProperty("sustc.test.password", "sustc"), true);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE TEMP TABLE cursor_rows (Id BIGINT PRIMARY KEY, Day TIMESTAMP, Amount DECIMAL(10, 2))");
+            for (long id = 1; id <= 40; id++) {
+                jdbcTemplate.update("INSERT INTO cursor_rows VALUES (?, ?, ?)", id,
+                        id % 7 == 0 ? null : Timestamp.valueOf(LocalDateTime.of(2024, 1, 1 + (int) (id % 5), 0, 0)),
+                        id % 6 == 0 ? null : BigDecimal.valueOf(id % 4, 1));
+            }
+            for (int size : new int[]{1, 3, 7, 40}) {
+                assertPagesMatch(jdbcTemplate, "Day", true, size);
+                assertPagesMatch(jdbcTemplate, "Day", false, size);
+                assertPagesMatch(jdbcTemplate, "Amount", true, size);
+                assertPagesMatch(jdbcTemplate, "Amount", false, size);
+            }
+        } finally {
+            dataSource.destroy();
+        }
+    }
+
+    private static void assertPagesMatch(JdbcTemplate jdbcTemplate, String keyColumn, boolean descending, int size) {
+        String order = " ORDER BY " + keyColumn + (descending ? " DESC" : " ASC") + ", Id DESC";
+        List<Long> expected = jdbcTemplate.queryForList("SELECT Id FROM cursor_rows" + order, Long.class);
+
+        String tag = KeysetCursor.tag("test", keyColumn + (descending ? "_desc" : "_asc"));
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            StringBuilder sql = new StringBuilder("SELECT Id, " + keyColumn + " FROM cursor_rows WHERE TRUE");
+            List<Object> params = new ArrayList<>();
+            KeysetCursor after = KeysetCursor.decode(cursor, tag);
+            if (after != null) {
+                after.appendSeek(sql, params, keyColumn, descending, "Id");
+            }
+            sql.append(order).append(" LIMIT ?");
+            params.add(size + 1);
+            CursorPage<Long> page = KeysetCursor.fetch(jdbcTemplate, sql.toString(), params, size, tag,
+                    keyColumn, "Id", (rs, rowNum) -> rs.getLong("Id"));
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(expected, paged, keyColumn + (descending ? " DESC" : " ASC") + ", page size " + size);
+    }
+
+    private static List<Object> seekParams(KeysetCursor cursor, boolean descending) {
+        List<Object> params = new ArrayList<>();
+        cursor.appendSeek(new StringBuilder(), params, "Key", descending, "Id");
+        return params;
+    }
+
+    private static String raw(String content) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,130 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Rows written through {@link PgCopyWriter} read back exactly as the {@code batchUpdate} inserts that the import
+ * used before stored them.
+ */
+@SpringJUnitConfig(TestDatabaseConfig.class)
+@EnabledIfSystemProperty(named = TestDatabaseConfig.URL, matches = ".+")
+class PgCopyWriterTest {
+
+    private static final String COLUMNS = "Id, Name, Rating, Amount, Created, Flag";
+
+    private static final String[] STRINGS = {
+            "plain", "back\\slash", "tab\there", "new\nline", "carriage\rreturn", "\\N", "\\t literal", "中文 ünïcode", "", null
+    };
+
+    // Amount 与食谱的营养成分列同为 DECIMAL(10,2)，Rating 不限精度，能看出是否按 6 位有效数字取整
+    private static final float[] FLOATS = {
+            0f, -0f, 0.1f, 1e-7f, 4.35f, -3.14159f, 123456.789f, 9999.995f, 1.5e7f, 0.000123456789f
+    };
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createTables() {
+        for (String table : new String[]{"copy_writer_copied", "copy_writer_inserted"}) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            jdbcTemplate.execute("CREATE TABLE " + table + " (Id BIGINT PRIMARY KEY, Name TEXT, Rating DECIMAL, " +
+                    "Amount DECIMAL(10,2), Created TIMESTAMP, Flag BOOLEAN)");
+        }
+    }
+
+    @AfterEach
+    void dropTables() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS copy_writer_copied");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS copy_writer_inserted");
+    }
+
+    @Test
+    void copiedRowsMatchBatchInsertedRows() throws Exception {
+        int rows = Math.max(STRINGS.length, FLOATS.length);
+        try (Connection conn = dataSource.getConnection();
+             PgCopyWriter writer = new PgCopyWriter(conn, "copy_writer_copied", COLUMNS)) {
+            for (int i = 0; i < rows; i++) {
+                writer.field((long) i)
+                        .field(STRINGS[i % STRINGS.length])
+                        .field(FLOATS[i % FLOATS.length])
+                        .field(FLOATS[i % FLOATS.length])
+                        .field(i % 2 == 0 ? timestamp(i) : null)
+                        .field(i % 3 == 0)
+                        .endRow();
+            }
+            assertEquals(rows, writer.finish());
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO copy_writer_inserted (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, i);
+                        ps.setString(2, STRINGS[i % STRINGS.length]);
+                        ps.setFloat(3, FLOATS[i % FLOATS.length]);
+                        ps.setFloat(4, FLOATS[i % FLOATS.length]);
+                        if (i % 2 == 0) {
+                            ps.setTimestamp(5, timestamp(i));
+                        } else {
+                            ps.setNull(5, Types.TIMESTAMP);
+                        }
+                        ps.setBoolean(6, i % 3 == 0);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows;
+                    }
+                });
+
+        List<Map<String, Object>> copied = jdbcTemplate.queryForList("SELECT * FROM copy_writer_copied ORDER BY Id");
+        List<Map<String, Object>> inserted = jdbcTemplate.queryForList("SELECT * FROM copy_writer_inserted ORDER BY Id");
+        assertEquals(inserted, copied);
+        // 空串与 NULL 必须区分开，字面量 \N 也不能被当成 NULL
+        assertEquals("", copied.get(8).get("name"));
+        assertNull(copied.get(9).get("name"));
+        assertEquals("\\N", copied.get(5).get("name"));
+        assertNull(copied.get(1).get("created"));
+    }
+
+    @Test
+    void floatsAreRoundedToSixSignificantDigits() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PgCopyWriter writer = new PgCopyWriter(conn, "copy_writer_copied", "Id, Rating")) {
+            writer.field(1L).field(0.1f).endRow();
+            writer.field(2L).field(123456.789f).endRow();
+            writer.field(3L).field(0.000123456789f).endRow();
+            writer.finish();
+        }
+
+        assertEquals(List.of("0.1", "123457", "0.000123457"), jdbcTemplate.queryForList(
+                "SELECT Rating::text FROM copy_writer_copied ORDER BY Id", String.class));
+    }
+
+    private static Timestamp timestamp(int i) {
+        return Timestamp.valueOf("2024-03-0" + (i % 9 + 1) + " 12:34:56.789");
+    }
+}
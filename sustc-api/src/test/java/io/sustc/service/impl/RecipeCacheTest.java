@@ -0,0 +1,104 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.RecipeRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecipeCacheTest {
+
+    private final RecipeCache cache = new RecipeCache(1 << 20);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void secondReadIsServedFromTheCache() {
+        assertEquals("v1", cache.get(1, id -> load(id, "v1")).getName());
+        RecipeRecord cached = cache.get(1, id -> load(id, "v2"));
+
+        assertEquals("v1", cached.getName());
+        assertEquals(1, loads.get());
+        cached.setName("changed by the caller");
+        assertEquals("v1", cache.get(1, id -> load(id, "v2")).getName());
+    }
+
+    // 事务内失效后，其他读者在提交/回滚前仍可能把旧行重新放入缓存；事务结束时必须再删一次
+    @Test
+    void entryReCachedDuringARolledBackTransactionIsDroppedAgain() {
+        cache.get(1, id -> load(id, "v1"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidate(1);
+        assertEquals("old", cache.get(1, id -> load(id, "old")).getName());
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals("v1", cache.get(1, id -> load(id, "v1")).getName());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void clearInsideATransactionRepeatsAfterCompletion() {
+        cache.get(1, id -> load(id, "v1"));
+        cache.get(2, id -> load(id, "v1"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.clear();
+        cache.get(2, id -> load(id, "old"));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals("v2", cache.get(2, id -> load(id, "v2")).getName());
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() {
+        RecipeRecord loaded = cache.get(1, id -> {
+            cache.invalidate(id);
+            return load(id, "stale");
+        });
+
+        assertEquals("stale", loaded.getName());
+        assertEquals("fresh", cache.get(1, id -> load(id, "fresh")).getName());
+    }
+
+    @Test
+    void bulkReadLoadsOnlyMissesAndKeepsOrder() {
+        cache.get(2, id -> load(id, "cached"));
+        long[] requested = new long[]{3, 2, 4, 3};
+        List<RecipeRecord> records = cache.getAll(requested, ids -> {
+            assertEquals(3, ids.length);
+            return List.of(load(3, "loaded"), load(3, "loaded"));
+        });
+
+        assertEquals("loaded", records.get(0).getName());
+        assertEquals("cached", records.get(1).getName());
+        assertNull(records.get(2));
+        assertNotSame(records.get(0), records.get(3));
+    }
+
+    private RecipeRecord load(long recipeId, String name) {
+        loads.incrementAndGet();
+        return RecipeRecord.builder().RecipeId(recipeId).name(name).recipeIngredientParts(new String[]{"salt"}).build();
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+}
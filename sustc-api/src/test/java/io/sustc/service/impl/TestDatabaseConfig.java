@@ -0,0 +1,87 @@
+package io.sustc.service.impl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spring configuration of the database tests: the beans of this package on the PostgreSQL database given by the
+ * {@code sustc.test.url} system property ({@code sustc.test.username} / {@code sustc.test.password}, both
+ * {@code sustc} by default).
+ * <p>
+ * The tests import their own fixtures, which replaces every table of that database, so point it at a scratch
+ * database. Test classes annotated with {@code @EnabledIfSystemProperty(named = URL, matches = ".+")} are skipped
+ * when it is not set.
+ */
+@Configuration
+@EnableTransactionManagement(proxyTargetClass = true)
+@ComponentScan("io.sustc.service")
+public class TestDatabaseConfig {
+
+    public static final String URL = "sustc.test.url";
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource dataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty(URL));
+        dataSource.setUsername(System.getProperty("sustc.test.username", "sustc"));
+        dataSource.setPassword(System.getProperty("sustc.test.password", "sustc"));
+        return dataSource;
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    /**
+     * A user whose password is {@code "pw" + authorId}, following {@code followingUsers}.
+     */
+    static UserRecord user(long authorId, boolean deleted, long... followingUsers) {
+        return UserRecord.builder()
+                .authorId(authorId)
+                .authorName("user" + authorId)
+                .gender("Female")
+                .age(30)
+                .password("pw" + authorId)
+                .isDeleted(deleted)
+                .followingUsers(followingUsers)
+                .followerUsers(new long[0])
+                .build();
+    }
+
+    /**
+     * Replaces the whole database with {@code users} and no recipes or reviews.
+     */
+    static void importUsers(DatabaseServiceImpl databaseService, UserRecord... users) {
+        List<ReviewRecord> reviews = new ArrayList<>();
+        List<RecipeRecord> recipes = new ArrayList<>();
+        databaseService.importData(reviews, List.of(users), recipes);
+    }
+
+    // 关注计数与关注边不一致的用户数
+    static long inconsistentCounters(JdbcTemplate jdbcTemplate) {
+        Long count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM users u
+                WHERE u.Followers <> (SELECT COUNT(*) FROM user_follows f WHERE f.FollowingId = u.AuthorId)
+                   OR u.Following <> (SELECT COUNT(*) FROM user_follows f WHERE f.FollowerId = u.AuthorId)
+                """, Long.class);
+        return count == null ? 0 : count;
+    }
+}
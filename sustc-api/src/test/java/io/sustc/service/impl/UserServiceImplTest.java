@@ -0,0 +1,112 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.AuthInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The single-statement follow and account deletion SQL ({@code FOLLOW_TOGGLE_SQL}, {@code FOLLOW_ALL_SQL},
+ * {@code DELETE_ACCOUNT_SQL}) keep the edges and both sides' counters in step.
+ */
+@SpringJUnitConfig(TestDatabaseConfig.class)
+@EnabledIfSystemProperty(named = TestDatabaseConfig.URL, matches = ".+")
+class UserServiceImplTest {
+
+    @Autowired
+    private DatabaseServiceImpl databaseService;
+
+    @Autowired
+    private UserServiceImpl userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 1 <-> 2，1 <-> 3，4 -> 1；5 已注销
+    @BeforeEach
+    void importUsers() {
+        TestDatabaseConfig.importUsers(databaseService,
+                TestDatabaseConfig.user(1, false, 2, 3),
+                TestDatabaseConfig.user(2, false, 1),
+                TestDatabaseConfig.user(3, false, 1),
+                TestDatabaseConfig.user(4, false, 1),
+                TestDatabaseConfig.user(5, true));
+    }
+
+    @Test
+    void followTogglesTheEdgeAndBothCounters() {
+        assertTrue(userService.follow(auth(4), 2));
+        assertTrue(follows(4, 2));
+        assertEquals(Map.of("followers", 2, "following", 2), counters(4, 2));
+
+        assertTrue(userService.follow(auth(4), 2));
+        assertFalse(follows(4, 2));
+        assertEquals(Map.of("followers", 1, "following", 1), counters(4, 2));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+    }
+
+    @Test
+    void followRejectsDeletedMissingAndSelf() {
+        assertThrows(SecurityException.class, () -> userService.follow(auth(4), 5));
+        assertThrows(SecurityException.class, () -> userService.follow(auth(4), 99));
+        assertThrows(SecurityException.class, () -> userService.follow(auth(4), 4));
+        assertThrows(SecurityException.class, () -> userService.follow(new AuthInfo(4, "wrong"), 2));
+
+        assertFalse(follows(4, 5));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+    }
+
+    @Test
+    void followAllAddsOnlyNewEdgesToActiveOthers() {
+        // 1 已关注，4 是自己，5 已注销，99 不存在，2 重复出现
+        assertEquals(2, userService.followAll(auth(4), new long[]{1, 2, 3, 4, 5, 99, 2}));
+        assertTrue(follows(4, 2));
+        assertTrue(follows(4, 3));
+        assertFalse(follows(4, 5));
+
+        assertEquals(0, userService.followAll(auth(4), new long[]{1, 2, 3}));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+    }
+
+    @Test
+    void deleteAccountRemovesEveryEdgeAndAdjustsTheOtherSide() {
+        assertTrue(userService.deleteAccount(auth(1), 1));
+
+        assertEquals(0L, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_follows WHERE FollowerId = 1 OR FollowingId = 1", Long.class));
+        assertTrue(jdbcTemplate.queryForObject("SELECT IsDeleted FROM users WHERE AuthorId = 1", Boolean.class));
+        assertEquals(Map.of("followers", 0, "following", 0), counters(1, 1));
+        assertEquals(Map.of("followers", 0, "following", 0), counters(2, 2));
+        assertEquals(Map.of("followers", 0, "following", 0), counters(4, 4));
+        assertEquals(0, TestDatabaseConfig.inconsistentCounters(jdbcTemplate));
+
+        assertThrows(SecurityException.class, () -> userService.deleteAccount(auth(1), 1));
+        assertThrows(SecurityException.class, () -> userService.deleteAccount(auth(2), 3));
+    }
+
+    private static AuthInfo auth(long authorId) {
+        return new AuthInfo(authorId, "pw" + authorId);
+    }
+
+    private boolean follows(long followerId, long followingId) {
+        return jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM user_follows WHERE FollowerId = ? AND FollowingId = ?)",
+                Boolean.class, followerId, followingId);
+    }
+
+    // followerId 的关注数与 followingId 的粉丝数
+    private Map<String, Integer> counters(long followerId, long followingId) {
+        return Map.of(
+                "followers", jdbcTemplate.queryForObject("SELECT Followers FROM users WHERE AuthorId = ?", Integer.class, followingId),
+                "following", jdbcTemplate.queryForObject("SELECT Following FROM users WHERE AuthorId = ?", Integer.class, followerId));
+    }
+}
@@ -3,18 +3,30 @@ package io.sustc.benchmark;
 import io.fury.ThreadSafeFury;
 import io.sustc.dto.*;
 import io.sustc.service.*;
+import io.sustc.service.impl.RecipeServiceImpl;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -38,6 +50,9 @@ public class BenchmarkService {
     @Autowired
     private ThreadSafeFury fury;
 
+    @Autowired
+    private DataSource dataSource;
+
 //    private final Map<Long, String> sentDanmu = new ConcurrentHashMap<>();
 //
 //    private final Set<String> postedVideo = new ConcurrentSkipListSet<>();
@@ -53,21 +68,432 @@ public class BenchmarkService {
         databaseService.drop();
     }
 
+    // 逐块读取导入文件并交给流式导入接口，内存中只保留当前正在解码的块。
+    // 解码在读取器所在的导入线程上进行，计时扣除三个读取器中最长的解码耗时；
+    // 三个线程并行解码，把三者相加会重复扣除同一段时间
     @BenchmarkStep(order = 1, timeout = 35, description = "Import data")
+    @SneakyThrows
     public BenchmarkResult importData() {
-        List<ReviewRecord> reviewRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
-        List<UserRecord> userRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
-        List<RecipeRecord> recipeRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
+        try (RecordFiles.Reader<ReviewRecord> reviewRecords = openRecords(BenchmarkConstants.REVIEW_RECORDS);
+             RecordFiles.Reader<UserRecord> userRecords = openRecords(BenchmarkConstants.USER_RECORDS);
+             RecordFiles.Reader<RecipeRecord> recipeRecords = openRecords(BenchmarkConstants.RECIPE_RECORDS)) {
 
-        val startTime = System.currentTimeMillis();
-        try {
-            databaseService.importData(reviewRecords, userRecords, recipeRecords);
-        } catch (Exception e) {
-            log.error("Exception encountered during importing data, you may early stop this run", e);
+            val startTime = System.currentTimeMillis();
+            try {
+                databaseService.importData(reviewRecords, userRecords, recipeRecords, importFingerprint());
+            } catch (Exception e) {
+                log.error("Exception encountered during importing data, you may early stop this run", e);
+            }
+            val endTime = System.currentTimeMillis();
+
+            long decode = Math.max(reviewRecords.getDecodeMillis(),
+                    Math.max(userRecords.getDecodeMillis(), recipeRecords.getDecodeMillis()));
+            log.info("Import took {} ms, of which {} ms decoding (reviews {} ms, users {} ms, recipes {} ms) is not timed",
+                    endTime - startTime, decode, reviewRecords.getDecodeMillis(), userRecords.getDecodeMillis(),
+                    recipeRecords.getDecodeMillis());
+            return new BenchmarkResult(Math.max(endTime - startTime - decode, 0));
         }
-        val endTime = System.currentTimeMillis();
+    }
+
+    private <T> RecordFiles.Reader<T> openRecords(String name) throws IOException {
+        return RecordFiles.open(fury, Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, name));
+    }
+
+    // 导入文件的名称、大小与修改时间；文件不变时，失败的导入可以从日志中断点续传
+    private String importFingerprint() throws IOException {
+        val fingerprint = new StringBuilder();
+        for (val name : new String[]{BenchmarkConstants.REVIEW_RECORDS, BenchmarkConstants.USER_RECORDS, BenchmarkConstants.RECIPE_RECORDS}) {
+            val file = Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, name);
+            fingerprint.append(name).append(':').append(Files.size(file))
+                    .append(':').append(Files.getLastModifiedTime(file).toMillis()).append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Imports a generated {@link SyntheticDataset} at each of the given scales, dropping all tables before each run,
+     * and measures how the import scales. Not a benchmark step: it replaces whatever data is in the database.
+     */
+    public List<ImportScalingResult> importScaling(long seed, int... scales) {
+        val heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+
+        val results = new ArrayList<ImportScalingResult>();
+        for (int scale : scales) {
+            val dataset = new SyntheticDataset(scale, seed);
+            databaseService.drop();
+            System.gc();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            val startTime = System.currentTimeMillis();
+            databaseService.importData(dataset.reviews(), dataset.users(), dataset.recipes());
+            val endTime = System.currentTimeMillis();
+
+            val result = new ImportScalingResult();
+            result.setScale(scale);
+            result.setElapsedTime(endTime - startTime);
+            result.setPeakHeap(heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+            measureTables(result);
+            log.info("Imported synthetic dataset x{}: {} rows in {} ms", scale, result.getTotalRows(), result.getElapsedTime());
+            results.add(result);
+        }
+        return results;
+    }
+
+    // 当前 schema 下每张表的行数与占用空间（含索引与 TOAST），不依赖具体的导入实现
+    @SneakyThrows(SQLException.class)
+    private void measureTables(ImportScalingResult result) {
+        val rows = new LinkedHashMap<String, Long>();
+        val sizes = new LinkedHashMap<String, Long>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            val tables = new ArrayList<String>();
+            try (ResultSet rs = stmt.executeQuery("SELECT tablename FROM pg_tables WHERE schemaname = current_schema() ORDER BY tablename")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            for (String table : tables) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*), pg_total_relation_size('\"" + table + "\"') FROM \"" + table + "\"")) {
+                    rs.next();
+                    rows.put(table, rs.getLong(1));
+                    sizes.put(table, rs.getLong(2));
+                }
+            }
+        }
+        result.setRows(rows);
+        result.setTableSizes(sizes);
+    }
+
+    // 食材列的两种传输方式：旧的 '>' 拼接字符串，与现在 RecipeServiceImpl 使用的 text[]
+    private static final String[][] INGREDIENT_VARIANTS = {
+            {"string_agg", "STRING_AGG(ri.IngredientPart, '>' ORDER BY LOWER(ri.IngredientPart))"},
+            {"array_agg", "ARRAY_AGG(ri.IngredientPart ORDER BY LOWER(ri.IngredientPart)) FILTER (WHERE ri.IngredientPart IS NOT NULL)"}
+    };
+
+    /**
+     * Measures how much it costs to turn the aggregated ingredient column of a recipe row into a {@code String[]},
+     * for the old {@code '>'}-joined {@code STRING_AGG} and the {@code ARRAY_AGG} that the recipe read path uses now.
+     * <p>
+     * Each round runs the query for the first {@code recipes} recipes untimed (the driver buffers the whole result),
+     * then times only the mapping loop over the buffered rows. The first round of each variant is a warm-up.
+     * Not a benchmark step: it only reads.
+     */
+    @SneakyThrows(SQLException.class)
+    public List<RowMappingResult> ingredientMapping(int recipes, int rounds) {
+        val threads = ManagementFactory.getThreadMXBean();
+        val allocation = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        val results = new ArrayList<RowMappingResult>();
+        try (Connection conn = dataSource.getConnection()) {
+            for (String[] variant : INGREDIENT_VARIANTS) {
+                String sql = "SELECT r.RecipeId, " + variant[1] + " AS ingredientParts " +
+                        "FROM recipes r LEFT JOIN recipe_ingredients ri ON r.RecipeId = ri.RecipeId " +
+                        "GROUP BY r.RecipeId ORDER BY r.RecipeId LIMIT ?";
+                boolean array = variant[0].equals("array_agg");
+                long nanos = 0;
+                long bytes = 0;
+                long rows = 0;
+                long checksum = 0;
+                for (int round = 0; round <= rounds; round++) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setInt(1, recipes);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            long allocatedBefore = allocation == null ? 0 : allocation.getThreadAllocatedBytes(threadId);
+                            long start = System.nanoTime();
+                            long n = 0;
+                            while (rs.next()) {
+                                String[] parts = array
+                                        ? RecipeServiceImpl.toIngredientParts(rs.getArray(2))
+                                        : splitIngredientParts(rs.getString(2));
+                                checksum += parts.length;
+                                n++;
+                            }
+                            long elapsed = System.nanoTime() - start;
+                            long allocated = allocation == null ? 0 : allocation.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                            if (round > 0) {
+                                nanos += elapsed;
+                                bytes += allocated;
+                                rows += n;
+                            }
+                        }
+                    }
+                }
+                val result = new RowMappingResult();
+                result.setVariant(variant[0]);
+                result.setRecipes((int) (rows / Math.max(rounds, 1)));
+                result.setRounds(rounds);
+                result.setNanosPerRecipe(rows == 0 ? 0 : (double) nanos / rows);
+                result.setBytesPerRecipe(allocation == null ? -1 : rows == 0 ? 0 : (double) bytes / rows);
+                log.debug("{}: {} ingredient parts mapped", variant[0], checksum);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    // RecipeServiceImpl 改用 ARRAY_AGG 之前的映射方式，作为对照
+    private static String[] splitIngredientParts(String ingredientStr) {
+        if (ingredientStr == null || ingredientStr.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(ingredientStr.split(">"))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    // getClosestCaloriePair 改用 LAG 之前的全配对查询，作为对照
+    private static final String CROSS_JOIN_CALORIE_PAIR_SQL = """
+            WITH recipe_calories AS (
+                SELECT RecipeId, calories, name
+                FROM recipes
+                WHERE calories IS NOT NULL
+            ),
+            pairs AS (
+                SELECT
+                    r1.RecipeId AS RecipeA,
+                    r2.RecipeId AS RecipeB,
+                    r1.calories AS CaloriesA,
+                    r2.calories AS CaloriesB,
+                    ABS(r1.calories - r2.calories) AS Difference,
+                    ROW_NUMBER() OVER (
+                        ORDER BY ABS(r1.calories - r2.calories),
+                                 LEAST(r1.RecipeId, r2.RecipeId),
+                                 GREATEST(r1.RecipeId, r2.RecipeId)
+                    ) as rn
+                FROM recipe_calories r1
+                CROSS JOIN recipe_calories r2
+                WHERE r1.RecipeId < r2.RecipeId
+            )
+            SELECT RecipeA, RecipeB, CaloriesA, CaloriesB, Difference
+            FROM pairs
+            WHERE rn = 1
+            """;
+
+    /**
+     * Compares the closest-calorie-pair query of {@link RecipeServiceImpl} with the all-pairs {@code CROSS JOIN} it
+     * replaced, on generated tables of the given sizes. Calories are {@code DECIMAL(10,2)} like the real column, with
+     * one decimal like the real data (so equal values and their tie-breaking occur), and 5% are {@code NULL}.
+     * <p>
+     * Each size is generated into a temporary table named {@code recipes}, which hides the real one for this
+     * connection only, so both statements run unchanged and the imported data is left alone.
+     * The {@code CROSS JOIN} is cancelled after {@code timeoutSeconds}.
+     */
+    @SneakyThrows(SQLException.class)
+    public List<CaloriePairResult> closestCaloriePair(long seed, int timeoutSeconds, int... sizes) {
+        val results = new ArrayList<CaloriePairResult>();
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            for (int size : sizes) {
+                stmt.execute("DROP TABLE IF EXISTS pg_temp.recipes");
+                stmt.execute("CREATE TEMP TABLE recipes (RecipeId BIGINT PRIMARY KEY, Name VARCHAR, Calories DECIMAL(10,2))");
+                stmt.execute("SELECT setseed(" + (double) (seed % 1000) / 1000 + ")");
+                stmt.execute("INSERT INTO pg_temp.recipes " +
+                        "SELECT i, 'Recipe ' || i, CASE WHEN random() < 0.05 THEN NULL " +
+                        "ELSE ROUND((random() * 1500)::numeric, 1) END " +
+                        "FROM generate_series(1, " + size + ") i");
+                stmt.execute("CREATE INDEX ON pg_temp.recipes (Calories, RecipeId)");
+                stmt.execute("VACUUM ANALYZE pg_temp.recipes");
+
+                val result = new CaloriePairResult();
+                result.setRecipes(size);
+                long start = System.currentTimeMillis();
+                List<Object> lagPair = queryPair(stmt, RecipeServiceImpl.CLOSEST_CALORIE_PAIR_SQL);
+                result.setLagTime(System.currentTimeMillis() - start);
+
+                stmt.execute("SET statement_timeout = " + timeoutSeconds * 1000L);
+                try {
+                    start = System.currentTimeMillis();
+                    List<Object> crossJoinPair = queryPair(stmt, CROSS_JOIN_CALORIE_PAIR_SQL);
+                    result.setCrossJoinTime(System.currentTimeMillis() - start);
+                    result.setSameResult(lagPair.equals(crossJoinPair));
+                } catch (SQLException e) {
+                    // 57014: query_canceled，即超时
+                    if (!"57014".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    result.setCrossJoinTime(-1);
+                } finally {
+                    stmt.execute("RESET statement_timeout");
+                }
+                log.info("Closest calorie pair on {} recipes: {}", size, result);
+                results.add(result);
+            }
+            stmt.execute("DROP TABLE IF EXISTS pg_temp.recipes");
+        }
+        return results;
+    }
+
+    private static List<Object> queryPair(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            val pair = new ArrayList<Object>();
+            if (rs.next()) {
+                for (int i = 1; i <= 5; i++) {
+                    pair.add(rs.getObject(i));
+                }
+            }
+            return pair;
+        }
+    }
+
+    /**
+     * Runs follow/unfollow toggles from {@code threads} threads at once, first with the statements {@code follow} used
+     * to issue one by one (login, followee check, edge check, insert or delete, two counter updates, in a transaction),
+     * then with {@link UserService#follow}.
+     * <p>
+     * Pairs are drawn from {@code users} random active users. Every pair is toggled twice in a row, so follow and
+     * unfollow are measured equally and the social graph ends up as it started; a failed toggle is counted and
+     * retried.
+     */
+    @SneakyThrows({SQLException.class, InterruptedException.class})
+    public List<FollowThroughputResult> followThroughput(long seed, int threads, int operations, int users) {
+        val pool = new ArrayList<AuthInfo>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT AuthorId, Password FROM users WHERE IsDeleted = FALSE AND Password <> '' ORDER BY AuthorId")) {
+            while (rs.next()) {
+                pool.add(new AuthInfo(rs.getLong(1), rs.getString(2)));
+            }
+        }
+        Collections.shuffle(pool, new Random(seed));
+        val chosen = pool.subList(0, Math.min(users, pool.size()));
+        if (chosen.size() < 2) {
+            throw new IllegalStateException("Need at least two active users");
+        }
+
+        val results = new ArrayList<FollowThroughputResult>();
+        results.add(runFollowLoad("previous", seed, threads, operations, chosen, this::previousFollow));
+        results.add(runFollowLoad("current", seed, threads, operations, chosen, (auth, followee) -> userService.follow(auth, followee)));
+        return results;
+    }
+
+    private interface FollowToggle {
+
+        boolean toggle(AuthInfo auth, long followeeId) throws Exception;
+    }
+
+    private FollowThroughputResult runFollowLoad(String implementation, long seed, int threads, int operations,
+                                                 List<AuthInfo> users, FollowToggle toggle) throws InterruptedException, SQLException {
+        int perThread = Math.max(operations / threads / 2, 1);
+        val failures = new AtomicLong();
+        val workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            val random = new Random(seed + t);
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    AuthInfo follower = users.get(random.nextInt(users.size()));
+                    long followee = users.get(random.nextInt(users.size())).getAuthorId();
+                    if (followee == follower.getAuthorId()) {
+                        continue;
+                    }
+                    for (int k = 0, attempts = 0; k < 2 && attempts < 10; attempts++) {
+                        try {
+                            toggle.toggle(follower, followee);
+                            k++;
+                        } catch (Exception e) {
+                            // 失败（多为死锁）时计数并重做，保证每对最终切换两次
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            }, "follow-" + implementation + "-" + t));
+        }
+        long start = System.currentTimeMillis();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        val result = new FollowThroughputResult();
+        result.setImplementation(implementation);
+        result.setThreads(threads);
+        result.setOperations((int) (perThread * threads * 2 + failures.get()));
+        result.setElapsedTime(System.currentTimeMillis() - start);
+        result.setFailures((int) failures.get());
+        result.setConsistent(followCountsMatch(users));
+        log.info("Follow throughput: {}", result);
+        return result;
+    }
+
+    // 改为单条语句之前 follow 的做法：每一步一次往返，在同一事务内执行
+    private boolean previousFollow(AuthInfo auth, long followeeId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                boolean result = previousFollow(conn, auth, followeeId);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
 
-        return new BenchmarkResult(endTime - startTime);
+    private static boolean previousFollow(Connection conn, AuthInfo auth, long followeeId) throws SQLException {
+        long followerId = auth.getAuthorId();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT Password, IsDeleted FROM users WHERE AuthorId = ?")) {
+            stmt.setLong(1, followerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getBoolean(2) || !auth.getPassword().equals(rs.getString(1))) {
+                    throw new SecurityException("Follower is invalid or inactive");
+                }
+            }
+        }
+        if (count(conn, "SELECT COUNT(*) FROM users WHERE AuthorId = ? AND IsDeleted = FALSE", followeeId) != 1) {
+            throw new SecurityException("Followee does not exist or is inactive");
+        }
+        boolean following = count(conn, "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
+                followerId, followeeId) > 0;
+        update(conn, following
+                ? "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?"
+                : "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)", followerId, followeeId);
+        int change = following ? -1 : 1;
+        update(conn, "UPDATE users SET Following = GREATEST(COALESCE(Following, 0) + " + change + ", 0) WHERE AuthorId = ?", followerId);
+        update(conn, "UPDATE users SET Followers = GREATEST(COALESCE(Followers, 0) + " + change + ", 0) WHERE AuthorId = ?", followeeId);
+        return true;
+    }
+
+    private static long count(Connection conn, String sql, long... args) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                stmt.setLong(i + 1, args[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static void update(Connection conn, String sql, long... args) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                stmt.setLong(i + 1, args[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    // 参与压测的用户，其计数是否与 user_follows 一致
+    private boolean followCountsMatch(List<AuthInfo> users) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("""
+                     SELECT COUNT(*) FROM users u
+                     WHERE u.AuthorId = ANY(?)
+                       AND (u.Followers <> (SELECT COUNT(*) FROM user_follows WHERE FollowingId = u.AuthorId)
+                         OR u.Following <> (SELECT COUNT(*) FROM user_follows WHERE FollowerId = u.AuthorId))
+                     """)) {
+            stmt.setArray(1, conn.createArrayOf("bigint", users.stream().map(AuthInfo::getAuthorId).toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1) == 0;
+            }
+        }
     }
 
     @BenchmarkStep(order = 2, description = "Test RecipeService#getRecipeNameFromID(Long)")
@@ -122,6 +548,30 @@ public class BenchmarkService {
         return new BenchmarkResult(pass, endTime - startTime);
     }
 
+    /**
+     * Checks the getRecipeById cases with one {@link RecipeService#getRecipesByIds} call instead of one call per
+     * id. Cases with a non-positive id only test argument validation and are left out. Not a benchmark step, since
+     * step 3 measures {@link RecipeService#getRecipeById} itself; run it with {@code db recipes-by-ids}.
+     */
+    public BenchmarkResult getRecipesByIdsTest() {
+        Map<Long, RecipeRecord> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_RECORD_SINGLE);
+        val ids = cases.keySet().stream().filter(id -> id > 0).mapToLong(Long::longValue).toArray();
+        val pass = new AtomicLong();
+
+        val startTime = System.currentTimeMillis();
+        val res = recipeService.getRecipesByIds(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (Objects.equals(cases.get(ids[i]), res.get(i))) {
+                pass.incrementAndGet();
+            } else {
+                log.debug("Wrong answer for {}: expected {}, got {}", ids[i], cases.get(ids[i]), res.get(i));
+            }
+        }
+        val endTime = System.currentTimeMillis();
+
+        return new BenchmarkResult(pass, endTime - startTime);
+    }
+
     @BenchmarkStep(order = 4, description = "Test RecipeService#searchRecipes(String, String, Double, Integer, Integer, String)")
     public BenchmarkResult searchRecipesTest() {
         List<Map.Entry<Object[], PageResult<RecipeRecord>>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_SEARCH);
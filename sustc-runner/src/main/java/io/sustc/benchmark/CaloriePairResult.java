@@ -0,0 +1,28 @@
+package io.sustc.benchmark;
+
+import lombok.Data;
+
+/**
+ * Timing of the closest-calorie-pair query on one generated table size,
+ * see {@link BenchmarkService#closestCaloriePair(long, int, int...)}.
+ */
+@Data
+public class CaloriePairResult {
+
+    private int recipes;
+
+    /**
+     * Time of the sort-and-{@code LAG} query that {@code RecipeServiceImpl#getClosestCaloriePair} runs, in milliseconds.
+     */
+    private long lagTime;
+
+    /**
+     * Time of the previous all-pairs {@code CROSS JOIN} query in milliseconds, or -1 when it hit the timeout.
+     */
+    private long crossJoinTime;
+
+    /**
+     * Whether both queries returned the same pair; {@code null} when the {@code CROSS JOIN} timed out.
+     */
+    private Boolean sameResult;
+}
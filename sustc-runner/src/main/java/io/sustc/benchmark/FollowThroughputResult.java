@@ -0,0 +1,43 @@
+package io.sustc.benchmark;
+
+import lombok.Data;
+
+/**
+ * Throughput of one follow/unfollow implementation under concurrent load,
+ * see {@link BenchmarkService#followThroughput(long, int, int, int)}.
+ */
+@Data
+public class FollowThroughputResult {
+
+    /**
+     * {@code "previous"} for the per-step statements {@code follow} used before, {@code "current"} for
+     * {@code UserService#follow}.
+     */
+    private String implementation;
+
+    private int threads;
+
+    /**
+     * Number of toggles attempted by all threads together.
+     */
+    private int operations;
+
+    /**
+     * Wall-clock time of the run in milliseconds.
+     */
+    private long elapsedTime;
+
+    /**
+     * Toggles that threw, e.g. because of a deadlock between two concurrent toggles.
+     */
+    private int failures;
+
+    /**
+     * Whether the Followers/Following counters of the users involved match {@code user_follows} afterwards.
+     */
+    private boolean consistent;
+
+    public double getOpsPerSecond() {
+        return elapsedTime == 0 ? 0 : (operations - failures) * 1000.0 / elapsedTime;
+    }
+}
@@ -0,0 +1,39 @@
+package io.sustc.benchmark;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Result of importing one synthetic dataset scale, see {@link BenchmarkService#importScaling(long, int...)}.
+ */
+@Data
+public class ImportScalingResult {
+
+    private int scale;
+
+    private long elapsedTime;
+
+    /**
+     * Highest heap usage seen during the import, in bytes (sum of the peak usage of each heap pool).
+     */
+    private long peakHeap;
+
+    /**
+     * Rows written to each table.
+     */
+    private Map<String, Long> rows;
+
+    /**
+     * On-disk size of each table in bytes, including indexes and TOAST data.
+     */
+    private Map<String, Long> tableSizes;
+
+    public long getTotalRows() {
+        return rows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedTime == 0 ? 0 : getTotalRows() * 1000 / elapsedTime;
+    }
+}
@@ -0,0 +1,178 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads and writes import record files in chunks, so a file never has to be held in memory as one list.
+ * <p>
+ * A chunked file starts with {@link #MAGIC}, followed by frames of {@code [int length][fury bytes]},
+ * each frame holding a {@code List} of at most {@link #CHUNK_SIZE} records.
+ * Files written by plain {@code fury.serialize(list)} are still readable, but are loaded at once.
+ */
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public final class RecordFiles {
+
+    private static final byte[] MAGIC = "SUSTCREC".getBytes(StandardCharsets.US_ASCII);
+
+    public static final int CHUNK_SIZE = 4096;
+
+    public static <T> Reader<T> open(ThreadSafeFury fury, Path file) throws IOException {
+        return new Reader<>(fury, file);
+    }
+
+    public static <T> Writer<T> create(ThreadSafeFury fury, Path file) throws IOException {
+        return new Writer<>(fury, file);
+    }
+
+    /**
+     * Iterates the records of a file, decoding one chunk at a time.
+     */
+    public static final class Reader<T> implements Iterator<T>, Closeable {
+
+        private final ThreadSafeFury fury;
+
+        private final DataInputStream in;
+
+        private Iterator<T> chunk = Collections.emptyIterator();
+
+        private boolean chunked;
+
+        // 读取与反序列化所花的时间；只由消费该迭代器的线程更新
+        private long decodeNanos;
+
+        @SuppressWarnings("unchecked")
+        private Reader(ThreadSafeFury fury, Path file) throws IOException {
+            this.fury = fury;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            byte[] head = new byte[MAGIC.length];
+            in.mark(MAGIC.length);
+            int read = in.readNBytes(head, 0, head.length);
+            chunked = read == MAGIC.length && Arrays.equals(head, MAGIC);
+            if (!chunked) {
+                // 旧格式：整个文件是一个序列化的 List，只能一次性读入
+                in.reset();
+                long start = System.nanoTime();
+                chunk = ((List<T>) fury.deserialize(in.readAllBytes())).iterator();
+                decodeNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (!chunk.hasNext() && chunked) {
+                long start = System.nanoTime();
+                try {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        chunked = false;
+                        break;
+                    }
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    chunk = ((List<T>) fury.deserialize(bytes)).iterator();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    decodeNanos += System.nanoTime() - start;
+                }
+            }
+            return chunk.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        /**
+         * Time spent reading and decoding chunks so far, in milliseconds; read it after the consuming thread is done.
+         */
+        public long getDecodeMillis() {
+            return decodeNanos / 1_000_000;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Appends records to a chunked file; records are buffered until a chunk is full.
+     */
+    public static final class Writer<T> implements Closeable {
+
+        private final ThreadSafeFury fury;
+
+        private final DataOutputStream out;
+
+        private final List<T> buffer = new ArrayList<>(CHUNK_SIZE);
+
+        private long count;
+
+        private Writer(ThreadSafeFury fury, Path file) throws IOException {
+            this.fury = fury;
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.write(MAGIC);
+        }
+
+        public void add(T record) throws IOException {
+            buffer.add(record);
+            count++;
+            if (buffer.size() >= CHUNK_SIZE) {
+                flushChunk();
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushChunk();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            byte[] bytes = fury.serialize(buffer);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            buffer.clear();
+        }
+    }
+}
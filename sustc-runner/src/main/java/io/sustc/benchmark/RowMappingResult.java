@@ -0,0 +1,29 @@
+package io.sustc.benchmark;
+
+import lombok.Data;
+
+/**
+ * Cost of mapping the ingredient column of recipe rows, see {@link BenchmarkService#ingredientMapping(int, int)}.
+ */
+@Data
+public class RowMappingResult {
+
+    /**
+     * How the ingredients are transported and mapped, e.g. {@code string_agg} or {@code array_agg}.
+     */
+    private String variant;
+
+    private int recipes;
+
+    private int rounds;
+
+    /**
+     * Average mapping time per recipe row, in nanoseconds (query execution excluded).
+     */
+    private double nanosPerRecipe;
+
+    /**
+     * Average heap allocation per recipe row, in bytes; -1 when the JVM cannot measure it.
+     */
+    private double bytesPerRecipe;
+}
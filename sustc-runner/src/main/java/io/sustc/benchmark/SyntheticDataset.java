@@ -0,0 +1,263 @@
+package io.sustc.benchmark;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import lombok.Getter;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Generates import records of a given scale without reading any file, for measuring how the import scales.
+ * <p>
+ * Scale 1 has {@link #BASE_USERS} users, {@link #BASE_RECIPES} recipes and {@link #BASE_REVIEWS} reviews,
+ * and every other scale multiplies all three. The skew follows what real social data looks like:
+ * follow targets, recipe authors and reviewed recipes are drawn from a Zipf-like (1/rank) distribution,
+ * and the number of follows per user and likes per review have a Pareto (Lomax) long tail.
+ * <p>
+ * Records are produced lazily, one at a time, and the same scale and seed always give the same records,
+ * so even the largest scales never have to fit in memory.
+ */
+public final class SyntheticDataset {
+
+    public static final int BASE_USERS = 10_000;
+
+    public static final int BASE_RECIPES = 5_000;
+
+    public static final int BASE_REVIEWS = 50_000;
+
+    private static final double MEAN_FOLLOWING = 6;
+
+    private static final double MEAN_LIKES = 2;
+
+    private static final int MAX_INGREDIENTS = 12;
+
+    private static final int INGREDIENT_VOCABULARY = 2_000;
+
+    private static final String[] GENDERS = {"Male", "Female"};
+
+    private static final String[] CATEGORIES = {
+            "Dessert", "Lunch/Snacks", "One Dish Meal", "Vegetable", "Breakfast", "Beverages",
+            "Chicken", "Pork", "Breads", "Sauces", "Salad Dressings", "Quick Breads"
+    };
+
+    // 2015-01-01 起的十年内随机取时间
+    private static final long EPOCH = Timestamp.valueOf("2015-01-01 00:00:00").getTime();
+
+    private static final long SPAN = 10L * 365 * 24 * 3600 * 1000;
+
+    @Getter
+    private final int scale;
+
+    @Getter
+    private final int userCount;
+
+    @Getter
+    private final int recipeCount;
+
+    @Getter
+    private final int reviewCount;
+
+    private final long seed;
+
+    private final long userStep;
+
+    private final long recipeStep;
+
+    public SyntheticDataset(int scale, long seed) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        this.userCount = BASE_USERS * scale;
+        this.recipeCount = BASE_RECIPES * scale;
+        this.reviewCount = BASE_REVIEWS * scale;
+        this.seed = seed;
+        this.userStep = permutationStep(userCount);
+        this.recipeStep = permutationStep(recipeCount);
+    }
+
+    public Iterator<UserRecord> users() {
+        return new Generator<>(userCount, seed, this::user);
+    }
+
+    public Iterator<RecipeRecord> recipes() {
+        return new Generator<>(recipeCount, seed * 31 + 1, this::recipe);
+    }
+
+    public Iterator<ReviewRecord> reviews() {
+        return new Generator<>(reviewCount, seed * 31 + 2, this::review);
+    }
+
+    private UserRecord user(long id, SplittableRandom random) {
+        // 只生成关注列表，粉丝列表留空：导入时两个方向会合并成同一张关注表
+        long[] following = new long[lomaxInt(random, MEAN_FOLLOWING, userCount - 1)];
+        for (int i = 0; i < following.length; i++) {
+            following[i] = zipf(random, userCount, userStep);
+        }
+        return UserRecord.builder()
+                .authorId(id)
+                .authorName("user" + id)
+                .gender(GENDERS[random.nextInt(GENDERS.length)])
+                .age(16 + random.nextInt(60))
+                .followerUsers(new long[0])
+                .followingUsers(following)
+                .password("pw" + Long.toHexString(random.nextLong()))
+                .build();
+    }
+
+    private RecipeRecord recipe(long id, SplittableRandom random) {
+        long authorId = zipf(random, userCount, userStep);
+        return RecipeRecord.builder()
+                .RecipeId(id)
+                .name("Recipe " + id)
+                .authorId(authorId)
+                .authorName("user" + authorId)
+                .cookTime("PT" + (5 + random.nextInt(120)) + "M")
+                .prepTime("PT" + (5 + random.nextInt(60)) + "M")
+                .totalTime("PT" + (10 + random.nextInt(180)) + "M")
+                .datePublished(timestamp(random))
+                .description("Synthetic recipe " + id + " for import benchmarks")
+                .recipeCategory(CATEGORIES[random.nextInt(CATEGORIES.length)])
+                .recipeIngredientParts(ingredients(random))
+                .aggregatedRating(1 + random.nextInt(5))
+                .reviewCount(random.nextInt(20))
+                .calories((float) (50 + random.nextDouble() * 1500))
+                .fatContent((float) (random.nextDouble() * 80))
+                .saturatedFatContent((float) (random.nextDouble() * 30))
+                .cholesterolContent((float) (random.nextDouble() * 300))
+                .sodiumContent((float) (random.nextDouble() * 2000))
+                .carbohydrateContent((float) (random.nextDouble() * 200))
+                .fiberContent((float) (random.nextDouble() * 20))
+                .sugarContent((float) (random.nextDouble() * 100))
+                .proteinContent((float) (random.nextDouble() * 60))
+                .recipeServings(1 + random.nextInt(8))
+                .recipeYield(random.nextInt(4) == 0 ? "1 loaf" : "")
+                .build();
+    }
+
+    private ReviewRecord review(long id, SplittableRandom random) {
+        long authorId = 1 + random.nextInt(userCount);
+        Timestamp submitted = timestamp(random);
+        return ReviewRecord.builder()
+                .reviewId(id)
+                .recipeId(zipf(random, recipeCount, recipeStep))
+                .authorId(authorId)
+                .authorName("user" + authorId)
+                .rating(1 + random.nextInt(5))
+                .review("Synthetic review " + id)
+                .dateSubmitted(submitted)
+                .dateModified(submitted)
+                .likes(likes(random))
+                .build();
+    }
+
+    // 点赞者必须互不相同（review_likes 的主键），长尾中个别评论的点赞数可以很大
+    private long[] likes(SplittableRandom random) {
+        int count = lomaxInt(random, MEAN_LIKES, userCount / 2);
+        if (count > 64) {
+            // 长尾部分取一段连续的用户，避免 O(k^2) 的查重
+            long start = 1 + random.nextInt(userCount - count + 1);
+            return LongStream.range(start, start + count).toArray();
+        }
+        long[] likes = new long[count];
+        int n = 0;
+        while (n < count) {
+            long liker = 1 + random.nextInt(userCount);
+            boolean duplicate = false;
+            for (int i = 0; i < n && !duplicate; i++) {
+                duplicate = likes[i] == liker;
+            }
+            if (!duplicate) {
+                likes[n++] = liker;
+            }
+        }
+        return likes;
+    }
+
+    // 食材名互不相同，并按大小写无关的字典序排列（与 RecipeRecord 的约定一致）
+    private static String[] ingredients(SplittableRandom random) {
+        int count = 1 + random.nextInt(MAX_INGREDIENTS);
+        String[] parts = random.ints(0, INGREDIENT_VOCABULARY)
+                .distinct()
+                .limit(count)
+                .mapToObj(i -> "ingredient " + i)
+                .toArray(String[]::new);
+        Arrays.sort(parts, String::compareToIgnoreCase);
+        return parts;
+    }
+
+    private static Timestamp timestamp(SplittableRandom random) {
+        // 取整到秒，和 CSV 转换出的数据一样没有毫秒
+        return new Timestamp((EPOCH + (long) (random.nextDouble() * SPAN)) / 1000 * 1000);
+    }
+
+    /**
+     * Draws an id in {@code [1, n]} with probability roughly proportional to {@code 1 / rank}.
+     * Ranks are spread over the id space by the multiplicative permutation {@code step}, so popular ids
+     * are not simply the small ones.
+     */
+    private static long zipf(SplittableRandom random, int n, long step) {
+        long rank = (long) Math.exp(random.nextDouble() * Math.log(n + 1.0)) - 1;
+        rank = Math.min(Math.max(rank, 0), n - 1);
+        return rank * step % n + 1;
+    }
+
+    // 与 n 互素的步长，使 rank -> rank * step mod n 成为 [0, n) 上的置换
+    private static long permutationStep(int n) {
+        long step = 2_654_435_761L % n;
+        while (step == 0 || gcd(step, n) != 1) {
+            step++;
+        }
+        return step;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Draws a count from a Lomax (shifted Pareto, shape 2) distribution with the given mean, capped at {@code max}:
+     * most draws are small or zero, a few are very large.
+     */
+    private static int lomaxInt(SplittableRandom random, double mean, int max) {
+        double value = mean * (1 / Math.sqrt(1 - random.nextDouble()) - 1);
+        return (int) Math.min(max, Math.round(value));
+    }
+
+    private static final class Generator<T> implements Iterator<T> {
+
+        private final int count;
+
+        private final SplittableRandom random;
+
+        private final BiFunction<Long, SplittableRandom, T> factory;
+
+        private int next;
+
+        private Generator(int count, long seed, BiFunction<Long, SplittableRandom, T> factory) {
+            this.count = count;
+            this.random = new SplittableRandom(seed);
+            this.factory = factory;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return factory.apply((long) ++next, random);
+        }
+    }
+}
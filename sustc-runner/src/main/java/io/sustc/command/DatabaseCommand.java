@@ -6,7 +6,14 @@ import com.opencsv.RFC4180ParserBuilder;
 import com.opencsv.exceptions.CsvException;
 import io.fury.ThreadSafeFury;
 import io.sustc.benchmark.BenchmarkConfig;
+import io.sustc.benchmark.BenchmarkConstants;
+import io.sustc.benchmark.BenchmarkResult;
 import io.sustc.benchmark.BenchmarkService;
+import io.sustc.benchmark.CaloriePairResult;
+import io.sustc.benchmark.FollowThroughputResult;
+import io.sustc.benchmark.ImportScalingResult;
+import io.sustc.benchmark.RecordFiles;
+import io.sustc.benchmark.RowMappingResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
@@ -14,6 +21,9 @@ import io.sustc.service.DatabaseService;
 import io.sustc.service.RecipeService;
 import io.sustc.service.ReviewService;
 import io.sustc.service.UserService;
+import io.sustc.service.impl.DatabaseServiceImpl;
+import io.sustc.service.impl.RecipeServiceImpl;
+import io.sustc.service.impl.UserServiceImpl;
 import io.sustc.ui.RecipeSwingApp;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -21,11 +31,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 
 import javax.swing.*;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.text.ParseException;
@@ -33,7 +45,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,6 +61,8 @@ import java.util.regex.Pattern;
 @ConditionalOnBean(DatabaseService.class)
 public class DatabaseCommand {
 
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+
     @Autowired
     private DatabaseService databaseService;
 
@@ -70,12 +89,24 @@ public class DatabaseCommand {
         return databaseService.getGroupMembers();
     }
 
-    @ShellMethod(key = "db import", value = "Drop all the tables. Then import data from csv")
-    public void importData() {
+    @ShellMethod(key = "db import", value = "Import data from the .ser files, resuming an interrupted import if possible (--fresh drops all tables first)")
+    public void importData(@ShellOption(defaultValue = "false") boolean fresh) {
         long startTime = System.currentTimeMillis();
 
-        databaseService.drop();
-        benchmarkService.importData();
+        // 默认不先 drop：导入写入暂存表并在最后原子替换，失败后重新执行会从导入日志续传；
+        // drop 会连同导入日志一起删掉，只有 --fresh 时才先 drop 并从头导入
+        if (fresh) {
+            databaseService.drop();
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        Map<String, Long> lastRows = new HashMap<>();
+        reporter.scheduleAtFixedRate(() -> printProgress(databaseService.getImportProgress(), lastRows),
+                PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        try {
+            benchmarkService.importData();
+        } finally {
+            reporter.shutdownNow();
+        }
 
         long endTime = System.currentTimeMillis();
         long duration = endTime - startTime;
@@ -83,6 +114,168 @@ public class DatabaseCommand {
         System.out.println("importData time: " + duration + " ms");
     }
 
+    // 打印每张表已写入的行数及最近一个周期内的写入速度；实现不报告进度时不打印
+    private static void printProgress(Map<String, Long> progress, Map<String, Long> lastRows) {
+        if (progress.isEmpty()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("import progress:");
+        progress.forEach((table, rows) -> {
+            long delta = rows - lastRows.getOrDefault(table, 0L);
+            lastRows.put(table, rows);
+            line.append(String.format(" %s %d (%d rows/s)", table, rows, delta * 1000 / PROGRESS_INTERVAL_MS));
+        });
+        System.out.println(line);
+    }
+
+    @ShellMethod(key = "db import-delta", value = "Apply a delta to the imported data: upsert the records of the .ser files in a directory and delete the given ids")
+    @SneakyThrows
+    public Map<String, Object> importDelta(@ShellOption(defaultValue = "data/delta") String dir,
+                                           @ShellOption(value = "--deleted-users", defaultValue = "") String deletedUsers,
+                                           @ShellOption(value = "--deleted-recipes", defaultValue = "") String deletedRecipes,
+                                           @ShellOption(value = "--deleted-reviews", defaultValue = "") String deletedReviews) {
+        if (!(databaseService instanceof DatabaseServiceImpl)) {
+            System.out.println("Delta import needs DatabaseServiceImpl");
+            return null;
+        }
+        // 目录中缺少的文件视为没有该类记录
+        List<ReviewRecord> reviews = readDeltaRecords(Paths.get(dir, BenchmarkConstants.REVIEW_RECORDS));
+        List<UserRecord> users = readDeltaRecords(Paths.get(dir, BenchmarkConstants.USER_RECORDS));
+        List<RecipeRecord> recipes = readDeltaRecords(Paths.get(dir, BenchmarkConstants.RECIPE_RECORDS));
+        return ((DatabaseServiceImpl) databaseService).importDelta(reviews, users, recipes,
+                parseIds(deletedReviews), parseIds(deletedUsers), parseIds(deletedRecipes));
+    }
+
+    private <T> List<T> readDeltaRecords(Path file) throws IOException {
+        List<T> records = new ArrayList<>();
+        if (Files.exists(file)) {
+            try (RecordFiles.Reader<T> reader = RecordFiles.open(fury, file)) {
+                reader.forEachRemaining(records::add);
+            }
+        }
+        return records;
+    }
+
+    private static long[] parseIds(String ids) {
+        return Arrays.stream(ids.split("\\s*,\\s*"))
+                .filter(id -> !id.isEmpty())
+                .mapToLong(Long::parseLong)
+                .toArray();
+    }
+
+    @ShellMethod(key = "db import-scaling", value = "Import synthetic datasets at several scales and report throughput, peak heap and table sizes (drops all tables)")
+    public void importScaling(@ShellOption(defaultValue = "1,10,100") String scales,
+                              @ShellOption(defaultValue = "42") long seed) {
+        int[] factors = Arrays.stream(scales.split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray();
+        for (ImportScalingResult result : benchmarkService.importScaling(seed, factors)) {
+            System.out.printf("scale x%d: %d rows in %d ms (%d rows/s), peak heap %d MB%n",
+                    result.getScale(), result.getTotalRows(), result.getElapsedTime(),
+                    result.getRowsPerSecond(), result.getPeakHeap() >> 20);
+            result.getRows().forEach((table, rows) -> System.out.printf("  %-20s %12d rows %10d KB%n",
+                    table, rows, result.getTableSizes().getOrDefault(table, 0L) >> 10));
+        }
+    }
+
+    @ShellMethod(key = "db ingredient-mapping", value = "Measure the per-recipe cost of mapping ingredient lists from STRING_AGG and ARRAY_AGG")
+    public void ingredientMapping(@ShellOption(defaultValue = "10000") int recipes,
+                                  @ShellOption(defaultValue = "20") int rounds) {
+        for (RowMappingResult result : benchmarkService.ingredientMapping(recipes, rounds)) {
+            System.out.printf("%-10s %d recipes x %d rounds: %.0f ns/recipe, %.0f bytes/recipe%n",
+                    result.getVariant(), result.getRecipes(), result.getRounds(),
+                    result.getNanosPerRecipe(), result.getBytesPerRecipe());
+        }
+    }
+
+    @ShellMethod(key = "db calorie-pair-scaling", value = "Time the closest-calorie-pair query against the old CROSS JOIN on generated tables")
+    public void caloriePairScaling(@ShellOption(defaultValue = "10000,100000,1000000") String sizes,
+                                   @ShellOption(defaultValue = "42") long seed,
+                                   @ShellOption(defaultValue = "120") int timeout) {
+        int[] counts = Arrays.stream(sizes.split("\\s*,\\s*")).mapToInt(Integer::parseInt).toArray();
+        for (CaloriePairResult result : benchmarkService.closestCaloriePair(seed, timeout, counts)) {
+            System.out.printf("%8d recipes: LAG %d ms, CROSS JOIN %s, same result: %s%n",
+                    result.getRecipes(), result.getLagTime(),
+                    result.getCrossJoinTime() < 0 ? "timed out after " + timeout + " s" : result.getCrossJoinTime() + " ms",
+                    result.getSameResult() == null ? "n/a" : result.getSameResult());
+        }
+    }
+
+    @ShellMethod(key = "db follow-throughput", value = "Compare follow/unfollow throughput of the old and current implementation under concurrent load")
+    public void followThroughput(@ShellOption(defaultValue = "8") int threads,
+                                 @ShellOption(defaultValue = "4000") int operations,
+                                 @ShellOption(defaultValue = "200") int users,
+                                 @ShellOption(defaultValue = "42") long seed) {
+        for (FollowThroughputResult result : benchmarkService.followThroughput(seed, threads, operations, users)) {
+            System.out.printf("%-8s %d threads: %d toggles in %d ms (%.0f/s), %d failed, counters consistent: %s%n",
+                    result.getImplementation(), result.getThreads(), result.getOperations(), result.getElapsedTime(),
+                    result.getOpsPerSecond(), result.getFailures(), result.isConsistent());
+        }
+    }
+
+    @ShellMethod(key = "db recipes-by-ids", value = "Check the getRecipeById cases with one bulk getRecipesByIds call")
+    public String recipesByIds() {
+        BenchmarkResult result = benchmarkService.getRecipesByIdsTest();
+        return String.format("%d passed in %d ms", result.getPassCnt(), result.getElapsedTime());
+    }
+
+    @ShellMethod(key = "db indexes", value = "Create missing secondary indexes and check that service queries can use them")
+    public void indexes() {
+        if (!(databaseService instanceof DatabaseServiceImpl)) {
+            System.out.println("Index provisioning needs DatabaseServiceImpl");
+            return;
+        }
+        DatabaseServiceImpl service = (DatabaseServiceImpl) databaseService;
+        System.out.println("created indexes: " + service.ensureIndexes());
+        List<String> problems = service.verifyIndexes();
+        System.out.println(problems.isEmpty()
+                ? "all declared indexes are valid and all checked queries can use an index"
+                : "unusable indexes and queries falling back to a full scan: " + problems);
+    }
+
+    @ShellMethod(key = "db recipe-cache", value = "Show hit/miss statistics of the recipe cache")
+    public Map<String, Object> recipeCache() {
+        if (!(recipeService instanceof RecipeServiceImpl)) {
+            System.out.println("Recipe cache statistics need RecipeServiceImpl");
+            return null;
+        }
+        return ((RecipeServiceImpl) recipeService).getCacheStats();
+    }
+
+    @ShellMethod(key = "db auth-cache", value = "Show hit ratio and saved round trips of the login credential cache")
+    public Map<String, Object> authCache() {
+        if (!(userService instanceof UserServiceImpl)) {
+            System.out.println("Auth cache statistics need UserServiceImpl");
+            return null;
+        }
+        return ((UserServiceImpl) userService).getAuthCacheStats();
+    }
+
+    @ShellMethod(key = "db timeline", value = "Show the size of the materialized feed timeline, or rebuild it")
+    public Map<String, Object> timeline(@ShellOption(defaultValue = "false") boolean rebuild) {
+        if (!(userService instanceof UserServiceImpl)) {
+            System.out.println("The feed timeline needs UserServiceImpl");
+            return null;
+        }
+        UserServiceImpl service = (UserServiceImpl) userService;
+        return rebuild ? service.rebuildTimeline() : service.getTimelineStats();
+    }
+
+    @ShellMethod(key = "db follow-ratio", value = "List the users with the highest follower/following ratio, show leaderboard statistics, or repair drifted follow counters")
+    public Object followRatio(@ShellOption(defaultValue = "10") int top,
+                              @ShellOption(defaultValue = "false") boolean stats,
+                              @ShellOption(defaultValue = "false") boolean reconcile) {
+        if (!(userService instanceof UserServiceImpl)) {
+            System.out.println("The follow ratio leaderboard needs UserServiceImpl");
+            return null;
+        }
+        UserServiceImpl service = (UserServiceImpl) userService;
+        if (reconcile) {
+            List<Long> repaired = service.reconcileFollowCounters();
+            System.out.println("Repaired the follow counters of " + repaired.size() + " users");
+            return repaired;
+        }
+        return stats ? service.getFollowRatioBoardStats() : service.listHighestFollowRatios(top);
+    }
+
     @ShellMethod(key = "db drop", value = "Drop all the tables")
     public void drop() {
         databaseService.drop();
@@ -100,19 +293,24 @@ public class DatabaseCommand {
             String projectRoot = System.getProperty("user.dir");
             System.out.println("projectRoot:" + projectRoot);
 
-            List<UserRecord> users = loadUsers(projectRoot + "/data/csv/users.csv");
-            List<RecipeRecord> recipes = loadRecipes(projectRoot + "/data/csv/recipes.csv");
-            List<ReviewRecord> reviews = loadReviews(projectRoot + "/data/csv/reviews.csv");
-
-            // 序列化数据
-            serializeData(users, projectRoot + "/data/import/users.ser");
-            serializeData(recipes, projectRoot + "/data/import/recipes.ser");
-            serializeData(reviews, projectRoot + "/data/import/reviews.ser");
+            // 逐行读取 csv 并按块写出 .ser，任何时候都不在内存中保留完整的记录列表
+            long users;
+            try (RecordFiles.Writer<UserRecord> out = RecordFiles.create(fury, Paths.get(projectRoot, "data/import/users.ser"))) {
+                users = loadUsers(projectRoot + "/data/csv/users.csv", out);
+            }
+            long recipes;
+            try (RecordFiles.Writer<RecipeRecord> out = RecordFiles.create(fury, Paths.get(projectRoot, "data/import/recipes.ser"))) {
+                recipes = loadRecipes(projectRoot + "/data/csv/recipes.csv", out);
+            }
+            long reviews;
+            try (RecordFiles.Writer<ReviewRecord> out = RecordFiles.create(fury, Paths.get(projectRoot, "data/import/reviews.ser"))) {
+                reviews = loadReviews(projectRoot + "/data/csv/reviews.csv", out);
+            }
 
             System.out.println("Data loading and serialization have been completed!");
-            System.out.println("user count: " + users.size());
-            System.out.println("recipe count: " + recipes.size());
-            System.out.println("review count: " + reviews.size());
+            System.out.println("user count: " + users);
+            System.out.println("recipe count: " + recipes);
+            System.out.println("review count: " + reviews);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -261,17 +459,13 @@ public class DatabaseCommand {
         }
     }
 
-    // 加载用户数据
-    public static List<UserRecord> loadUsers(String filePath) throws IOException, CsvException {
-        List<UserRecord> users = new ArrayList<>();
-
+    // 加载用户数据，逐行解析后写入 out，返回写入的记录数
+    public static long loadUsers(String filePath, RecordFiles.Writer<UserRecord> out) throws IOException, CsvException {
         try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
             // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
+            reader.skip(1);
+            String[] fields;
+            while ((fields = reader.readNext()) != null) {
                 if (fields.length >= 9) {
                     UserRecord user = UserRecord.builder().authorId(parseLong(fields[0])).authorName(fields[1] != null ? fields[1].trim() : "").gender(fields[2] != null ? fields[2].trim() : "").age(parseInt(fields[3])).
                             followers(parseInt(fields[4])).
@@ -280,29 +474,25 @@ public class DatabaseCommand {
                             followingUsers(parseCsvLongList(fields[7])).
                             password(fields[8] != null ? fields[8].trim() : "").build();
 
-                    users.add(user);
+                    out.add(user);
                 }
             }
         }
 
-        return users;
+        return out.getCount();
     }
 
     //加载食谱数据
-    public static List<RecipeRecord> loadRecipes(String filePath) throws IOException, CsvException {
-        List<RecipeRecord> recipes = new ArrayList<>();
-
+    public static long loadRecipes(String filePath, RecordFiles.Writer<RecipeRecord> out) throws IOException, CsvException {
         // 使用 RFC4180Parser 创建 CSVReader
         try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
                 .withCSVParser(new RFC4180ParserBuilder().build())
                 .build()) {
 
-            List<String[]> records = reader.readAll();
-
             // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
+            reader.skip(1);
+            String[] fields;
+            while ((fields = reader.readNext()) != null) {
                 if (fields.length >= 24) {
                     RecipeRecord recipe = RecipeRecord.builder()
                             .RecipeId(parseLong(fields[0]))
@@ -331,25 +521,21 @@ public class DatabaseCommand {
                             .recipeYield(fields[23] != null ? fields[23].trim() : "")
                             .build();
 
-                    recipes.add(recipe);
+                    out.add(recipe);
                 }
             }
         }
 
-        return recipes;
+        return out.getCount();
     }
 
     // 加载评论数据
-    public static List<ReviewRecord> loadReviews(String filePath) throws IOException, CsvException {
-        List<ReviewRecord> reviews = new ArrayList<>();
-
+    public static long loadReviews(String filePath, RecordFiles.Writer<ReviewRecord> out) throws IOException, CsvException {
         try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
             // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
+            reader.skip(1);
+            String[] fields;
+            while ((fields = reader.readNext()) != null) {
                 if (fields.length >= 9) {
                     ReviewRecord review = ReviewRecord.builder().reviewId(parseLong(fields[0])).
                             recipeId(parseLong(fields[1])).authorId(parseLong(fields[2])).
@@ -358,18 +544,12 @@ public class DatabaseCommand {
                             dateSubmitted(parseTimestamp(fields[6])).dateModified(parseTimestamp(fields[7])).
                             likes(parseCsvLongList(fields[8])).build();
 
-                    reviews.add(review);
+                    out.add(review);
                 }
             }
         }
 
-        return reviews;
-    }
-
-    @SneakyThrows
-    public void serializeData(List<?> data, String outputFilePath) throws IOException {
-        byte[] serializedData = fury.serialize(data);
-        Files.write(Paths.get(outputFilePath), serializedData);
+        return out.getCount();
     }
 
     @SneakyThrows